@@ -1,8 +1,34 @@
 package course.concurrency.exams.auction;
 
+import java.util.Collection;
+
 public interface Auction {
 
     boolean propose(Bid bid);
 
     Bid getLatestBid();
+
+    /**
+     * Reduces the batch to its best bid and proposes only that one,
+     * so the whole batch costs a single CAS loop or lock acquisition.
+     *
+     * @return per-bid results, true only for the bid that became the latest one
+     */
+    default boolean[] proposeAll(Bid[] bids) {
+        boolean[] accepted = new boolean[bids.length];
+        int best = -1;
+        for (int i = 0; i < bids.length; i++) {
+            if (bids[i] != null && (best < 0 || bids[i].getPrice() > bids[best].getPrice())) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            accepted[best] = propose(bids[best]);
+        }
+        return accepted;
+    }
+
+    default boolean[] proposeAll(Collection<Bid> bids) {
+        return proposeAll(bids.toArray(new Bid[0]));
+    }
 }
@@ -0,0 +1,131 @@
+package course.concurrency.exams.auction;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Flat-combining auction. Each thread publishes its bid into its own slot,
+ * and whoever holds the combiner flag applies all published bids in one pass
+ * and hands the results back through the slots. Under heavy contention only
+ * the combiner touches latestBid, instead of every thread retrying a CAS.
+ * <p>
+ * Every few passes the combiner retires slots that had no request for a while and unlinks
+ * them, so threads that are gone don't make every pass longer. Retiring and publishing
+ * a request are both a CAS on the empty slot, so exactly one of them wins; a thread whose
+ * slot was retired registers a new one.
+ */
+public class AuctionFlatCombining implements Auction {
+
+    private static final int SPINS_BEFORE_YIELD = 64;
+    private static final int CLEANUP_PERIOD = 64;
+    private static final int MAX_IDLE_PASSES = 256;
+    private static final Bid RETIRED = new Bid(-1L, null, -1L);
+
+    private final Notifier notifier;
+    private final AtomicBoolean combining = new AtomicBoolean();
+    private final AtomicReference<Slot> slots = new AtomicReference<>();
+    private final ThreadLocal<Slot> threadSlot = ThreadLocal.withInitial(this::register);
+    // written only by the thread holding the combiner flag, read by registering threads
+    private volatile long passes;
+
+    private volatile Bid latestBid = new Bid(-1L, null, -1L);
+
+    public AuctionFlatCombining(Notifier notifier) {
+        this.notifier = notifier;
+    }
+
+    public boolean propose(Bid bid) {
+        if (bid.getPrice() <= latestBid.getPrice()) {
+            return false;
+        }
+
+        Slot slot = threadSlot.get();
+        while (!slot.request.compareAndSet(null, bid)) {
+            slot = register();
+            threadSlot.set(slot);
+        }
+        int spins = 0;
+        // a slot is retired only once empty, so a retired slot means the request was served
+        while (isPending(slot.request.get())) {
+            if (!combining.get() && combining.compareAndSet(false, true)) {
+                try {
+                    combine();
+                } finally {
+                    combining.set(false);
+                }
+            } else if (++spins % SPINS_BEFORE_YIELD == 0) {
+                // the combiner may be descheduled when threads outnumber cores
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+
+        if (slot.outdated == null) {
+            return false;
+        }
+        notifier.sendOutdatedMessage(slot.outdated);
+        return true;
+    }
+
+    public Bid getLatestBid() {
+        return latestBid;
+    }
+
+    private static boolean isPending(Bid request) {
+        return request != null && request != RETIRED;
+    }
+
+    // number of registered slots, retired ones included until they are unlinked
+    int getSlotCount() {
+        int count = 0;
+        for (Slot slot = slots.get(); slot != null; slot = slot.next) {
+            count++;
+        }
+        return count;
+    }
+
+    // called only by the thread holding the combiner flag
+    private void combine() {
+        long pass = ++passes;
+        boolean cleanup = pass % CLEANUP_PERIOD == 0;
+        Bid latest = latestBid;
+        Slot prev = null;
+        for (Slot slot = slots.get(); slot != null; slot = slot.next) {
+            Bid bid = slot.request.get();
+            if (isPending(bid)) {
+                if (bid.getPrice() > latest.getPrice()) {
+                    slot.outdated = latest;
+                    latest = bid;
+                    latestBid = bid;
+                } else {
+                    slot.outdated = null;
+                }
+                slot.lastUsed = pass;
+                slot.request.set(null);
+            } else if (cleanup && prev != null && (bid == RETIRED || pass - slot.lastUsed > MAX_IDLE_PASSES
+                    && slot.request.compareAndSet(null, RETIRED))) {
+                // the head is left in place, registering threads push in front of it
+                prev.next = slot.next;
+                continue;
+            }
+            prev = slot;
+        }
+    }
+
+    private Slot register() {
+        Slot slot = new Slot();
+        slot.lastUsed = passes;
+        do {
+            slot.next = slots.get();
+        } while (!slots.compareAndSet(slot.next, slot));
+        return slot;
+    }
+
+    private static class Slot {
+        final AtomicReference<Bid> request = new AtomicReference<>();
+        Bid outdated;
+        long lastUsed;
+        Slot next;
+    }
+}
@@ -1,32 +1,57 @@
 package course.concurrency.exams.auction;
 
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 public class AuctionOptimistic implements Auction {
 
     private Notifier notifier;
+    private final Backoff backoff;
+    private final LongAdder casFailures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
 
     public AuctionOptimistic(Notifier notifier) {
+        this(notifier, Backoff.none());
+    }
+
+    public AuctionOptimistic(Notifier notifier, Backoff backoff) {
         this.notifier = notifier;
+        this.backoff = backoff;
     }
 
     private final AtomicReference<Bid> latestBid = new AtomicReference<>(new Bid(-1L, null, -1L));
 
     public boolean propose(Bid bid) {
-        Bid prev;
-        do {
-            prev = latestBid.get();
+        int failures = 0;
+        while (true) {
+            Bid prev = latestBid.get();
             if (bid.getPrice() <= prev.getPrice()) {
                 return false;
             }
-        } while (!trySet(prev, bid));
-        return true;
+            if (failures > 0) {
+                retries.increment();
+            }
+            if (trySet(prev, bid)) {
+                backoff.onSuccess();
+                return true;
+            }
+            casFailures.increment();
+            backoff.onFailure(++failures);
+        }
     }
 
     public Bid getLatestBid() {
         return latestBid.get();
     }
 
+    public long getCasFailureCount() {
+        return casFailures.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
     private boolean trySet(Bid prev, Bid bid) {
         boolean result = latestBid.compareAndSet(prev, bid);
         if (result) {
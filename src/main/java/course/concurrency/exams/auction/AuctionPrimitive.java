@@ -0,0 +1,109 @@
+package course.concurrency.exams.auction;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optimistic auction that keeps no Bid objects on the write path.
+ * The winning price and bid id are packed into one long (price in the high 32 bits,
+ * bid id in the low 32 bits), so a proposal is a single CAS on a primitive.
+ * The winner's participant id is published right after that CAS into a second word
+ * packed with the price it belongs to; prices only grow, so the price identifies the winner.
+ * <p>
+ * The proposal CAS itself is lock-free, but between it and the winner publication other
+ * proposers and readers wait for the winner, so this short window is blocking: a descheduled
+ * winner delays everyone until it runs again.
+ */
+public class AuctionPrimitive implements Auction {
+
+    private static final long INITIAL = pack(-1, -1);
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final Notifier notifier;
+    private final AtomicLong state = new AtomicLong(INITIAL);
+    private final AtomicLong winner = new AtomicLong(INITIAL);
+
+    public AuctionPrimitive(Notifier notifier) {
+        this.notifier = notifier;
+    }
+
+    public boolean propose(Bid bid) {
+        return propose(bid.getId(), bid.getParticipantId(), bid.getPrice());
+    }
+
+    public boolean propose(long bidId, long participantId, long price) {
+        checkRange(bidId, "bid id");
+        checkRange(participantId, "participant id");
+        checkRange(price, "price");
+
+        long next = pack(price, bidId);
+        long prev;
+        long prevWinner;
+        do {
+            prev = state.get();
+            if (price <= priceOf(prev)) {
+                return false;
+            }
+            prevWinner = awaitWinner(prev);
+        } while (priceOf(prevWinner) != priceOf(prev) || !state.compareAndSet(prev, next));
+
+        publishWinner(pack(price, participantId));
+        notifier.sendOutdatedMessage(lowOf(prev), lowOf(prevWinner), priceOf(prev));
+        return true;
+    }
+
+    public Bid getLatestBid() {
+        while (true) {
+            long current = state.get();
+            if (current == INITIAL) {
+                return new Bid(-1L, null, -1L);
+            }
+            long currentWinner = awaitWinner(current);
+            if (priceOf(currentWinner) == priceOf(current)) {
+                return new Bid((long) lowOf(current), (long) lowOf(currentWinner), (long) priceOf(current));
+            }
+        }
+    }
+
+    // wait for the winner of the given state (or a later one) to publish its participant
+    private long awaitWinner(long current) {
+        long published;
+        int spins = 0;
+        while (priceOf(published = winner.get()) < priceOf(current)) {
+            if (++spins % SPINS_BEFORE_YIELD == 0) {
+                // the winner may be descheduled between its CAS and the publication
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        return published;
+    }
+
+    private void publishWinner(long next) {
+        long published;
+        do {
+            published = winner.get();
+            if (priceOf(published) >= priceOf(next)) {
+                return;
+            }
+        } while (!winner.compareAndSet(published, next));
+    }
+
+    private static long pack(long high, long low) {
+        return (high << 32) | (low & 0xFFFF_FFFFL);
+    }
+
+    private static int priceOf(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    private static int lowOf(long packed) {
+        return (int) packed;
+    }
+
+    private static void checkRange(long value, String name) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(name + " must fit into 32 bits: " + value);
+        }
+    }
+}
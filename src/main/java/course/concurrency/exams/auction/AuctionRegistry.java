@@ -0,0 +1,141 @@
+package course.concurrency.exams.auction;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Many lots behind one registry. A lot is just an entry in one of the shards
+ * holding its latest Bid: there is no per-lot auction object or Notifier,
+ * lots are created on the first proposal and reads never take a lock.
+ * A stopped lot keeps its final bid wrapped into a StoppedBid.
+ */
+public class AuctionRegistry {
+
+    private static final Bid NO_BID = new Bid(-1L, null, -1L);
+
+    private final Notifier notifier;
+    private final ConcurrentHashMap<Long, Bid>[] shards;
+    private final int mask;
+
+    public AuctionRegistry(Notifier notifier) {
+        this(notifier, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public AuctionRegistry(Notifier notifier, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be greater than 0");
+        }
+        this.notifier = notifier;
+        int size = Integer.highestOneBit(shardCount - 1) << 1;
+        this.shards = new ConcurrentHashMap[Math.max(size, 1)];
+        this.mask = shards.length - 1;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    public boolean propose(long lotId, Bid bid) {
+        ConcurrentHashMap<Long, Bid> lots = shardOf(lotId);
+        Bid prev;
+        do {
+            prev = lots.get(lotId);
+            if (prev == null) {
+                if (bid.getPrice() <= NO_BID.getPrice()) {
+                    return false;
+                }
+                prev = lots.putIfAbsent(lotId, bid);
+                if (prev == null) {
+                    return true;
+                }
+            }
+            if (prev instanceof StoppedBid || bid.getPrice() <= prev.getPrice()) {
+                return false;
+            }
+        } while (!lots.replace(lotId, prev, bid));
+
+        notifier.sendOutdatedMessage(prev);
+        return true;
+    }
+
+    public Bid getLatestBid(long lotId) {
+        Bid bid = shardOf(lotId).get(lotId);
+        return bid == null ? NO_BID : bid;
+    }
+
+    public boolean isStopped(long lotId) {
+        return shardOf(lotId).get(lotId) instanceof StoppedBid;
+    }
+
+    // stop auction on the lot and return its latest bid
+    public Bid stopAuction(long lotId) {
+        ConcurrentHashMap<Long, Bid> lots = shardOf(lotId);
+        Bid prev;
+        do {
+            prev = lots.get(lotId);
+            if (prev == null) {
+                prev = lots.putIfAbsent(lotId, new StoppedBid(NO_BID));
+                if (prev == null) {
+                    return NO_BID;
+                }
+            }
+            if (prev instanceof StoppedBid) {
+                return prev;
+            }
+        } while (!lots.replace(lotId, prev, new StoppedBid(prev)));
+        return prev;
+    }
+
+    public Map<Long, Bid> stopAuctions(Collection<Long> lotIds) {
+        Map<Long, Bid> result = new HashMap<>();
+        for (Long lotId : lotIds) {
+            result.put(lotId, stopAuction(lotId));
+        }
+        return result;
+    }
+
+    // stop every lot created so far
+    public Map<Long, Bid> stopAll() {
+        Map<Long, Bid> result = new HashMap<>();
+        for (ConcurrentHashMap<Long, Bid> lots : shards) {
+            for (Long lotId : lots.keySet()) {
+                result.put(lotId, stopAuction(lotId));
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<Long, Bid> lots : shards) {
+            size += lots.size();
+        }
+        return size;
+    }
+
+    /**
+     * Single-lot view of the registry. It holds no state, so it can be created per call.
+     */
+    public AuctionStoppable getAuction(long lotId) {
+        return new AuctionStoppable() {
+            public boolean propose(Bid bid) {
+                return AuctionRegistry.this.propose(lotId, bid);
+            }
+
+            public Bid getLatestBid() {
+                return AuctionRegistry.this.getLatestBid(lotId);
+            }
+
+            public Bid stopAuction() {
+                return AuctionRegistry.this.stopAuction(lotId);
+            }
+        };
+    }
+
+    private ConcurrentHashMap<Long, Bid> shardOf(long lotId) {
+        int hash = Long.hashCode(lotId);
+        return shards[(hash ^ (hash >>> 16)) & mask];
+    }
+}
@@ -0,0 +1,194 @@
+package course.concurrency.exams.auction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Optimistic auction whose state lives in a memory-mapped file, so JVMs on the same host
+ * that open the same file bid on the same lot without a network hop or a coordinator.
+ * Every process uses its own Notifier.
+ * <p>
+ * Like AuctionPrimitive, the winning price and the number of its bid record are packed
+ * into one state word (price + 1 in the high 32 bits, record number and the stopped flag
+ * in the low ones), so proposing and stopping are a single CAS. Bid id and participant
+ * live in a ring of records: a proposer claims a free record with a CAS on its owner word,
+ * writes the bid there and publishes it with the CAS on the state. A record is given back
+ * when its proposal loses, or when a later bid replaces it as the winner, so the ring only
+ * needs room for the proposals in flight. Readers take the record of the state they read
+ * and check that the state didn't change meanwhile; prices only grow, so an unchanged state
+ * means the record wasn't given back.
+ * <p>
+ * No process ever waits for another, so a process that dies at any point can't block the
+ * others: at worst it keeps up to two records claimed for good. A zero-filled file is an
+ * auction without bids, so a new file needs no initialization either. A proposal that finds
+ * no free record in the whole ring is rejected.
+ */
+public class AuctionSharedMemory implements AuctionStoppable {
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int STATE = 0;
+    private static final int NEXT_RECORD = 8;
+    private static final int CAPACITY = 16;
+
+    static final int RECORD_SIZE = 24;
+    private static final int OWNER = 0;
+    private static final int BID_ID = 8;
+    private static final int PARTICIPANT = 16;
+    private static final long FREE = 0;
+    private static final long CLAIMED = 1;
+
+    private static final long STOPPED = 1;
+    private static final long MAX_PRICE = 0xFFFF_FFFEL;
+    private static final long NO_PARTICIPANT = Long.MIN_VALUE;
+
+    private final Notifier notifier;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    public AuctionSharedMemory(Notifier notifier, Path file) {
+        this(notifier, file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of bid records in the ring, the same for every process using the file
+     */
+    public AuctionSharedMemory(Notifier notifier, Path file, int capacity) {
+        if (capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+            throw new IllegalArgumentException("Capacity must be between 1 and "
+                    + (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE);
+        }
+        this.notifier = notifier;
+        this.capacity = capacity;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long stored = (long) LONGS.compareAndExchange(buffer, CAPACITY, 0L, (long) capacity);
+        if (stored != 0 && stored != capacity) {
+            throw new IllegalArgumentException("File " + file + " holds " + stored + " bids, not " + capacity);
+        }
+    }
+
+    public boolean propose(Bid bid) {
+        Long participantId = bid.getParticipantId();
+        return propose(bid.getId(), participantId == null ? NO_PARTICIPANT : participantId, bid.getPrice());
+    }
+
+    public boolean propose(long bidId, long participantId, long price) {
+        if (price > MAX_PRICE) {
+            throw new IllegalArgumentException("price must fit into 32 bits: " + price);
+        }
+        long prev = (long) LONGS.getVolatile(buffer, STATE);
+        if (!canWin(prev, price)) {
+            return false;
+        }
+
+        int record = claim();
+        if (record < 0) {
+            return false;
+        }
+        int offset = offsetOf(record);
+        LONGS.set(buffer, offset + BID_ID, bidId);
+        LONGS.set(buffer, offset + PARTICIPANT, participantId);
+        long next = ((price + 1) << 32) | ((long) record << 1);
+        while (true) {
+            // read before the CAS: while prev is the state its record can't be given back
+            long prevBidId = -1;
+            long prevParticipant = NO_PARTICIPANT;
+            if (priceOf(prev) >= 0) {
+                int prevOffset = offsetOf(recordOf(prev));
+                prevBidId = (long) LONGS.get(buffer, prevOffset + BID_ID);
+                prevParticipant = (long) LONGS.get(buffer, prevOffset + PARTICIPANT);
+            }
+            if (LONGS.compareAndSet(buffer, STATE, prev, next)) {
+                if (priceOf(prev) >= 0) {
+                    release(recordOf(prev));
+                }
+                notifier.sendOutdatedMessage(prevBidId, prevParticipant, priceOf(prev));
+                return true;
+            }
+            prev = (long) LONGS.getVolatile(buffer, STATE);
+            if (!canWin(prev, price)) {
+                release(record);
+                return false;
+            }
+        }
+    }
+
+    public Bid getLatestBid() {
+        while (true) {
+            long state = (long) LONGS.getVolatile(buffer, STATE);
+            long price = priceOf(state);
+            if (price < 0) {
+                return new Bid(-1L, null, -1L);
+            }
+            int offset = offsetOf(recordOf(state));
+            long bidId = (long) LONGS.get(buffer, offset + BID_ID);
+            long participantId = (long) LONGS.get(buffer, offset + PARTICIPANT);
+            VarHandle.acquireFence();
+            // only a new winner gives the record back, stopping keeps it
+            if (((long) LONGS.getVolatile(buffer, STATE) | STOPPED) == (state | STOPPED)) {
+                return new Bid(bidId, participantId == NO_PARTICIPANT ? null : participantId, price);
+            }
+        }
+    }
+
+    public Bid stopAuction() {
+        long state = (long) LONGS.getVolatile(buffer, STATE);
+        while ((state & STOPPED) == 0 && !LONGS.compareAndSet(buffer, STATE, state, state | STOPPED)) {
+            state = (long) LONGS.getVolatile(buffer, STATE);
+        }
+        notifier.shutdown();
+        // the state can't change after the stop, so this is the final bid
+        return getLatestBid();
+    }
+
+    // claims a free record, -1 if the whole ring is taken
+    private int claim() {
+        for (int i = 0; i < capacity; i++) {
+            long next = (long) LONGS.getAndAdd(buffer, NEXT_RECORD, 1L);
+            int record = (int) Long.remainderUnsigned(next, capacity);
+            int offset = offsetOf(record);
+            if ((long) LONGS.getVolatile(buffer, offset + OWNER) == FREE
+                    && LONGS.compareAndSet(buffer, offset + OWNER, FREE, CLAIMED)) {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    private void release(int record) {
+        LONGS.setRelease(buffer, offsetOf(record) + OWNER, FREE);
+    }
+
+    private static boolean canWin(long state, long price) {
+        return (state & STOPPED) == 0 && price > priceOf(state);
+    }
+
+    private static long priceOf(long state) {
+        return (state >>> 32) - 1;
+    }
+
+    private static int recordOf(long state) {
+        return (int) state >>> 1;
+    }
+
+    private static int offsetOf(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+}
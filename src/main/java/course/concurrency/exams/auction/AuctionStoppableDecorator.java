@@ -0,0 +1,26 @@
+package course.concurrency.exams.auction;
+
+/**
+ * Base of auction decorators: delegates everything to the wrapped auction,
+ * subclasses override only what they add to it.
+ */
+public abstract class AuctionStoppableDecorator implements AuctionStoppable {
+
+    protected final AuctionStoppable auction;
+
+    protected AuctionStoppableDecorator(AuctionStoppable auction) {
+        this.auction = auction;
+    }
+
+    public boolean propose(Bid bid) {
+        return auction.propose(bid);
+    }
+
+    public Bid getLatestBid() {
+        return auction.getLatestBid();
+    }
+
+    public Bid stopAuction() {
+        return auction.stopAuction();
+    }
+}
@@ -1,61 +1,68 @@
 package course.concurrency.exams.auction;
 
-import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 public class AuctionStoppableOptimistic implements AuctionStoppable {
 
     private final Notifier notifier;
-    private final AtomicMarkableReference<Bid> latestBid =
-            new AtomicMarkableReference<>(new Bid(-1L, null, -1L), false);
-    private final Object lock = new Object();
-    private volatile boolean stopInitiated = false;
+    private final Backoff backoff;
+    private final LongAdder casFailures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    // holds a StoppedBid once the auction is stopped
+    private final AtomicReference<Bid> latestBid = new AtomicReference<>(new Bid(-1L, null, -1L));
 
     public AuctionStoppableOptimistic(Notifier notifier) {
-        this.notifier = notifier;
+        this(notifier, Backoff.none());
     }
 
+    public AuctionStoppableOptimistic(Notifier notifier, Backoff backoff) {
+        this.notifier = notifier;
+        this.backoff = backoff;
+    }
 
     public boolean propose(Bid bid) {
-        if (latestBid.isMarked()) {
-            return false;
-        }
-
-        Bid prev;
-        synchronized (stopInitiated ? lock : new Object()) {
-            do {
-                prev = latestBid.getReference();
-                if (latestBid.isMarked() || bid.getPrice() <= prev.getPrice()) {
-                    return false;
-                }
-            } while (!latestBid.compareAndSet(prev, bid, false, false));
+        int failures = 0;
+        while (true) {
+            Bid prev = latestBid.get();
+            if (prev instanceof StoppedBid || bid.getPrice() <= prev.getPrice()) {
+                return false;
+            }
+            if (failures > 0) {
+                retries.increment();
+            }
+            if (latestBid.compareAndSet(prev, bid)) {
+                backoff.onSuccess();
+                notifier.sendOutdatedMessage(prev);
+                return true;
+            }
+            casFailures.increment();
+            backoff.onFailure(++failures);
         }
-
-        notifier.sendOutdatedMessage(prev);
-        return true;
-    }
-
-    @Override
-    public String toString() {
-        return super.toString();
     }
 
     public Bid getLatestBid() {
-        return latestBid.getReference();
+        return latestBid.get();
     }
 
     public Bid stopAuction() {
-        stopInitiated = true;
-        try {
-            synchronized (lock) {
-                notifier.shutdown();
-                Bid prev;
-                do {
-                    prev = latestBid.getReference();
-                } while (!latestBid.attemptMark(prev, true));
+        Bid prev;
+        do {
+            prev = latestBid.get();
+            if (prev instanceof StoppedBid) {
                 return prev;
             }
-        } finally {
-            stopInitiated = false;
-        }
+        } while (!latestBid.compareAndSet(prev, new StoppedBid(prev)));
+
+        notifier.shutdown();
+        return prev;
+    }
+
+    public long getCasFailureCount() {
+        return casFailures.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
     }
 }
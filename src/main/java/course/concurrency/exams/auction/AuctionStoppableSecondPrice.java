@@ -0,0 +1,93 @@
+package course.concurrency.exams.auction;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sealed-bid second-price (Vickrey) auction. The highest and the second-highest bids
+ * and the stopped flag live in one immutable state swapped by a single CAS.
+ * Bids at or below the second price are rejected after one read, the same as
+ * AuctionOptimistic rejects bids below the latest one; only accepted bids allocate a new state.
+ * The winner pays the second-highest price, or the reserve price if nobody else bid;
+ * ClearedBid tells the two apart.
+ */
+public class AuctionStoppableSecondPrice implements AuctionStoppable {
+
+    private static final Bid NO_BID = new Bid(-1L, null, -1L);
+
+    private final Notifier notifier;
+    private final long reservePrice;
+    private final AtomicReference<State> state = new AtomicReference<>(new State(NO_BID, NO_BID, false));
+
+    public AuctionStoppableSecondPrice(Notifier notifier) {
+        this(notifier, 0L);
+    }
+
+    public AuctionStoppableSecondPrice(Notifier notifier, long reservePrice) {
+        this.notifier = notifier;
+        this.reservePrice = reservePrice;
+    }
+
+    // true if the bid became the highest one
+    public boolean propose(Bid bid) {
+        if (bid.getPrice() < reservePrice) {
+            return false;
+        }
+        State prev;
+        State next;
+        do {
+            prev = state.get();
+            if (prev.stopped || bid.getPrice() <= prev.second.getPrice()) {
+                return false;
+            }
+            next = bid.getPrice() > prev.highest.getPrice()
+                    ? new State(bid, prev.highest, false)
+                    : new State(prev.highest, bid, false);
+        } while (!state.compareAndSet(prev, next));
+
+        if (next.highest != bid) {
+            return false;
+        }
+        notifier.sendOutdatedMessage(prev.highest);
+        return true;
+    }
+
+    public Bid getLatestBid() {
+        return state.get().highest;
+    }
+
+    public ClearedBid stopAuction() {
+        State prev;
+        do {
+            prev = state.get();
+            if (prev.stopped) {
+                return clear(prev);
+            }
+        } while (!state.compareAndSet(prev, new State(prev.highest, prev.second, true)));
+
+        notifier.shutdown();
+        return clear(prev);
+    }
+
+    private ClearedBid clear(State state) {
+        if (state.highest == NO_BID) {
+            return new ClearedBid(NO_BID, NO_BID.getPrice(), false);
+        }
+        if (state.second == NO_BID) {
+            return new ClearedBid(state.highest, reservePrice, false);
+        }
+        // bids below the reserve price are rejected, so the second one is at least the reserve
+        return new ClearedBid(state.highest, state.second.getPrice(), true);
+    }
+
+    private static class State {
+        final Bid highest;
+        final Bid second;
+        final boolean stopped;
+
+        State(Bid highest, Bid second, boolean stopped) {
+            this.highest = highest;
+            this.second = second;
+            this.stopped = stopped;
+        }
+    }
+}
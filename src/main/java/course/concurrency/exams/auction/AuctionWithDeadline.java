@@ -0,0 +1,77 @@
+package course.concurrency.exams.auction;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closes the wrapped auction automatically at its deadline, driven by a shared TimingWheel.
+ * With anti-sniping enabled, an accepted bid that arrives less than extensionWindow before
+ * the deadline moves the deadline to extension after the bid. Extending only touches
+ * the deadline: when the wheel fires early, the close is rescheduled for the time left.
+ */
+public class AuctionWithDeadline extends AuctionStoppableDecorator {
+
+    private final TimingWheel wheel;
+    private final long extensionWindowNanos;
+    private final long extensionNanos;
+    private final AtomicLong deadline;
+    private volatile TimingWheel.Timeout timeout;
+    private volatile boolean closed = false;
+
+    public AuctionWithDeadline(AuctionStoppable auction, TimingWheel wheel, long durationMillis) {
+        this(auction, wheel, durationMillis, 0, 0);
+    }
+
+    public AuctionWithDeadline(AuctionStoppable auction, TimingWheel wheel, long durationMillis,
+                               long extensionWindowMillis, long extensionMillis) {
+        super(auction);
+        this.wheel = wheel;
+        this.extensionWindowNanos = TimeUnit.MILLISECONDS.toNanos(extensionWindowMillis);
+        this.extensionNanos = TimeUnit.MILLISECONDS.toNanos(extensionMillis);
+        this.deadline = new AtomicLong(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis));
+        this.timeout = wheel.schedule(this::onDeadline, durationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean propose(Bid bid) {
+        long now = System.nanoTime();
+        if (now - deadline.get() >= 0) {
+            return false;
+        }
+        boolean accepted = auction.propose(bid);
+        if (accepted && extensionNanos > 0) {
+            extend(now);
+        }
+        return accepted;
+    }
+
+    private void extend(long now) {
+        long current = deadline.get();
+        if (current - now < extensionWindowNanos) {
+            deadline.accumulateAndGet(now + extensionNanos, (prev, next) -> next - prev > 0 ? next : prev);
+        }
+    }
+
+    private void onDeadline() {
+        long remaining = deadline.get() - System.nanoTime();
+        if (remaining > 0) {
+            timeout = wheel.schedule(this::onDeadline, remaining, TimeUnit.NANOSECONDS);
+        } else {
+            closed = true;
+            auction.stopAuction();
+        }
+    }
+
+    public long getRemainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline.get() - System.nanoTime()));
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public Bid stopAuction() {
+        closed = true;
+        timeout.cancel();
+        return auction.stopAuction();
+    }
+}
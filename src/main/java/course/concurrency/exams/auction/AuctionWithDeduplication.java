@@ -0,0 +1,32 @@
+package course.concurrency.exams.auction;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops retried bids before they reach the wrapped auction. A bid whose id was seen
+ * recently costs one lookup in a RecentIdFilter instead of a CAS attempt and a spurious
+ * outdated notification. A duplicate is answered with whether that bid is the latest one now.
+ */
+public class AuctionWithDeduplication extends AuctionStoppableDecorator {
+
+    private final RecentIdFilter recentIds;
+    private final LongAdder duplicates = new LongAdder();
+
+    public AuctionWithDeduplication(AuctionStoppable auction, int recentIdCapacity) {
+        super(auction);
+        this.recentIds = new RecentIdFilter(recentIdCapacity);
+    }
+
+    public boolean propose(Bid bid) {
+        Long id = bid.getId();
+        if (id != null && !recentIds.add(id)) {
+            duplicates.increment();
+            return id.equals(auction.getLatestBid().getId());
+        }
+        return auction.propose(bid);
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+}
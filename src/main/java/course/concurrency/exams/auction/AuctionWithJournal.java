@@ -0,0 +1,55 @@
+package course.concurrency.exams.auction;
+
+/**
+ * Journals every accepted bid and the stop of the wrapped auction to a BidJournal.
+ * On creation the wrapped auction is restored from the journal: the recovered
+ * latest bid is proposed to it, and it is stopped if the journal says so.
+ * <p>
+ * A journal slot is reserved before a bid is applied, so a full journal rejects the bid
+ * with IllegalStateException without changing the auction. A bid that loses or fails
+ * gives its slot back for the next one. Accepted bids survive a crash
+ * of the process, but the journal is forced to disk only once per flush interval:
+ * an OS crash can lose bids acknowledged during the last interval.
+ */
+public class AuctionWithJournal extends AuctionStoppableDecorator {
+
+    private final BidJournal journal;
+
+    public AuctionWithJournal(AuctionStoppable auction, BidJournal journal) {
+        super(auction);
+        this.journal = journal;
+
+        Bid recovered = journal.getRecoveredBid();
+        if (recovered != null) {
+            auction.propose(recovered);
+        }
+        if (journal.isRecoveredStopped()) {
+            auction.stopAuction();
+        }
+    }
+
+    public boolean propose(Bid bid) {
+        // a bid that can't win doesn't need a slot
+        if (bid.getPrice() <= auction.getLatestBid().getPrice()) {
+            return false;
+        }
+        long slot = journal.reserve();
+        boolean accepted = false;
+        try {
+            accepted = auction.propose(bid);
+        } finally {
+            if (accepted) {
+                journal.write(slot, bid);
+            } else {
+                journal.release(slot);
+            }
+        }
+        return accepted;
+    }
+
+    public Bid stopAuction() {
+        Bid result = auction.stopAuction();
+        journal.appendStop(result);
+        return result;
+    }
+}
@@ -0,0 +1,40 @@
+package course.concurrency.exams.auction;
+
+import java.util.concurrent.Flow;
+
+/**
+ * Streams accepted bids and the final result of the wrapped auction to subscribers,
+ * so nobody has to poll getLatestBid(). Slow subscribers get conflated updates.
+ */
+public class AuctionWithPublisher extends AuctionStoppableDecorator implements Flow.Publisher<Bid> {
+
+    private final ConflatingBidPublisher publisher;
+
+    public AuctionWithPublisher(AuctionStoppable auction) {
+        this(auction, new ConflatingBidPublisher());
+    }
+
+    public AuctionWithPublisher(AuctionStoppable auction, ConflatingBidPublisher publisher) {
+        super(auction);
+        this.publisher = publisher;
+    }
+
+    public boolean propose(Bid bid) {
+        if (auction.propose(bid)) {
+            publisher.publish(bid);
+            return true;
+        }
+        return false;
+    }
+
+    public Bid stopAuction() {
+        Bid result = auction.stopAuction();
+        publisher.complete(result);
+        return result;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Bid> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+}
@@ -0,0 +1,37 @@
+package course.concurrency.exams.auction;
+
+import java.util.List;
+
+/**
+ * Keeps a top-K BidBook next to any stoppable auction, so when the winner
+ * fails payment the next-highest bidders are still known. Every proposed bid is
+ * offered to the book, not only accepted ones: a bid that lost to the current winner
+ * may still be the second highest. Bids proposed after the stop are not recorded.
+ */
+public class AuctionWithTopBids extends AuctionStoppableDecorator {
+
+    private final BidBook book;
+    private volatile boolean stopped = false;
+
+    public AuctionWithTopBids(AuctionStoppable auction, int capacity) {
+        super(auction);
+        this.book = new BidBook(capacity);
+    }
+
+    public boolean propose(Bid bid) {
+        boolean accepted = auction.propose(bid);
+        if (accepted || !stopped) {
+            book.offer(bid);
+        }
+        return accepted;
+    }
+
+    public List<Bid> getTopBids(int k) {
+        return book.getTopBids(k);
+    }
+
+    public Bid stopAuction() {
+        stopped = true;
+        return auction.stopAuction();
+    }
+}
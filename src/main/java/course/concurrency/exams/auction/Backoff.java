@@ -0,0 +1,80 @@
+package course.concurrency.exams.auction;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * What a CAS loop does after a failed compareAndSet before it retries.
+ */
+public interface Backoff {
+
+    /**
+     * @param failures failed attempts of the current call so far, starting from 1
+     */
+    void onFailure(int failures);
+
+    default void onSuccess() {
+    }
+
+    static Backoff none() {
+        return failures -> {};
+    }
+
+    // spin as many times as the call has failed, up to maxSpins
+    static Backoff spin(int maxSpins) {
+        return failures -> spinWait(Math.min(failures, maxSpins));
+    }
+
+    // spin a random number of times below a limit that doubles with every failure
+    static Backoff exponential(int minSpins, int maxSpins) {
+        return failures -> {
+            int limit = Math.min(maxSpins, minSpins << Math.min(failures - 1, 30));
+            spinWait(ThreadLocalRandom.current().nextInt(Math.max(limit, 1)) + 1);
+        };
+    }
+
+    static Backoff proportional(int spinsPerLevel, int maxLevel) {
+        return new Proportional(spinsPerLevel, maxLevel);
+    }
+
+    private static void spinWait(int spins) {
+        for (int i = 0; i < spins; i++) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Backoff proportional to the recently observed failure rate: every failure
+     * raises the contention level, every success lowers it. The level is updated
+     * without CAS; losing an update only makes the estimate a bit less precise.
+     */
+    class Proportional implements Backoff {
+
+        private final int spinsPerLevel;
+        private final int maxLevel;
+        private volatile int level;
+
+        Proportional(int spinsPerLevel, int maxLevel) {
+            this.spinsPerLevel = spinsPerLevel;
+            this.maxLevel = maxLevel;
+        }
+
+        public void onFailure(int failures) {
+            int current = level;
+            if (current < maxLevel) {
+                level = current + 1;
+            }
+            spinWait(ThreadLocalRandom.current().nextInt(current * spinsPerLevel + 1) + 1);
+        }
+
+        public void onSuccess() {
+            int current = level;
+            if (current > 0) {
+                level = current - 1;
+            }
+        }
+
+        public int getLevel() {
+            return level;
+        }
+    }
+}
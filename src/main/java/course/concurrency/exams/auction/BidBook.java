@@ -0,0 +1,75 @@
+package course.concurrency.exams.auction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded book of the highest bids. Once it's full, bids at or below the lowest kept price
+ * are rejected with one volatile read. Inserts go to a lock-free skip list and the
+ * overflow is trimmed right after, so the book may briefly hold a few extra bids.
+ */
+public class BidBook {
+
+    private static final Comparator<Bid> HIGHEST_FIRST = Comparator
+            .comparing(Bid::getPrice, Comparator.reverseOrder())
+            .thenComparing(Bid::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final int capacity;
+    private final ConcurrentSkipListMap<Bid, Bid> bids = new ConcurrentSkipListMap<>(HIGHEST_FIRST);
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile long threshold = Long.MIN_VALUE;
+
+    public BidBook(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+    }
+
+    public boolean offer(Bid bid) {
+        if (bid.getPrice() <= threshold) {
+            return false;
+        }
+        if (bids.putIfAbsent(bid, bid) != null) {
+            return false;
+        }
+        if (size.incrementAndGet() > capacity && bids.pollLastEntry() != null) {
+            size.decrementAndGet();
+        }
+        raiseThreshold();
+        return bids.containsKey(bid);
+    }
+
+    private void raiseThreshold() {
+        if (size.get() < capacity) {
+            return;
+        }
+        Map.Entry<Bid, Bid> lowest = bids.lastEntry();
+        if (lowest != null && lowest.getKey().getPrice() > threshold) {
+            threshold = lowest.getKey().getPrice();
+        }
+    }
+
+    // snapshot of at most k highest bids, highest first
+    public List<Bid> getTopBids(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Bid count must be greater than 0");
+        }
+        int limit = Math.min(k, capacity);
+        List<Bid> result = new ArrayList<>(limit);
+        Iterator<Bid> iterator = bids.keySet().iterator();
+        while (result.size() < limit && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
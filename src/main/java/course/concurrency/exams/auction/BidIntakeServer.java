@@ -0,0 +1,303 @@
+package course.concurrency.exams.auction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TCP front-end that takes bids in a fixed-width binary protocol, big-endian:
+ * request is lot id, bid id, participant id and price (4 longs, 32 bytes),
+ * response is the bid id and 1 if the bid was accepted or 0 otherwise (2 longs, 16 bytes).
+ * Clients may pipeline requests; responses come back in request order.
+ *
+ * A few event-loop threads each run a selector. Requests are decoded straight from pooled
+ * direct buffers into a primitive propose call; when a client doesn't read its responses,
+ * the connection stops reading requests until the output buffer drains.
+ */
+public class BidIntakeServer implements AutoCloseable {
+
+    public static final int REQUEST_SIZE = 32;
+    public static final int RESPONSE_SIZE = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public interface BidHandler {
+        boolean propose(long lotId, long bidId, long participantId, long price);
+    }
+
+    // single-lot handler: lot id of the request is ignored
+    public static BidHandler forAuction(Auction auction) {
+        if (auction instanceof AuctionPrimitive) {
+            AuctionPrimitive primitive = (AuctionPrimitive) auction;
+            return (lotId, bidId, participantId, price) -> primitive.propose(bidId, participantId, price);
+        }
+        return (lotId, bidId, participantId, price) -> auction.propose(new Bid(bidId, participantId, price));
+    }
+
+    private final BidHandler handler;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private final LongAdder ioErrors = new LongAdder();
+    private final LongAdder handlerErrors = new LongAdder();
+    private int nextLoop;
+
+    public BidIntakeServer(InetSocketAddress address, BidHandler handler, int eventLoops) {
+        if (eventLoops < 1) {
+            throw new IllegalArgumentException("Event loop count must be greater than 0");
+        }
+        this.handler = handler;
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            loops = new EventLoop[eventLoops];
+            for (int i = 0; i < eventLoops; i++) {
+                loops[i] = new EventLoop(i);
+            }
+            serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) {
+            loop.running = false;
+            loop.selector.wakeup();
+        }
+        for (EventLoop loop : loops) {
+            try {
+                loop.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return number of I/O failures of accepting connections or of event loops
+     */
+    public long getIoErrorCount() {
+        return ioErrors.sum();
+    }
+
+    /**
+     * @return number of requests whose handler threw, they are answered as rejected
+     */
+    public long getHandlerErrorCount() {
+        return handlerErrors.sum();
+    }
+
+    protected void log(String message) {
+        System.out.println(message);
+    }
+
+    private void ioError(String message, IOException e) {
+        ioErrors.increment();
+        log(message + ": " + e);
+    }
+
+    private ByteBuffer takeBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        bufferPool.offer(buffer);
+    }
+
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this);
+            thread.setName("BidIntakeServer_" + index);
+            thread.setDaemon(true);
+        }
+
+        void register(SocketChannel channel) {
+            registrations.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerPending();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                ioError("Event loop " + thread.getName() + " stopped", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void registerPending() throws IOException {
+            SocketChannel channel;
+            while ((channel = registrations.poll()) != null) {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(key, channel));
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isWritable()) {
+                    connection.onWritable();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    connection.onReadable();
+                }
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+
+        private void accept() {
+            try {
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    channel.socket().setTcpNoDelay(true);
+                    loops[nextLoop++ % loops.length].register(channel);
+                }
+            } catch (IOException e) {
+                ioError("Failed to accept connection", e);
+            }
+        }
+    }
+
+    private class Connection {
+        private final SelectionKey key;
+        private final SocketChannel channel;
+        private final ByteBuffer in = takeBuffer();
+        private final ByteBuffer out = takeBuffer();
+        private boolean closed;
+
+        Connection(SelectionKey key, SocketChannel channel) {
+            this.key = key;
+            this.channel = channel;
+        }
+
+        void onReadable() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            process();
+        }
+
+        void onWritable() throws IOException {
+            // writes out the stuck responses first, then decodes the requests waiting behind them
+            process();
+        }
+
+        private void process() throws IOException {
+            in.flip();
+            // requests already buffered get no new read event, so keep going while the writes make room
+            do {
+                while (in.remaining() >= REQUEST_SIZE && out.remaining() >= RESPONSE_SIZE) {
+                    long lotId = in.getLong();
+                    long bidId = in.getLong();
+                    long participantId = in.getLong();
+                    long price = in.getLong();
+                    out.putLong(bidId);
+                    out.putLong(propose(lotId, bidId, participantId, price) ? 1 : 0);
+                }
+                write();
+            } while (in.remaining() >= REQUEST_SIZE && out.remaining() >= RESPONSE_SIZE);
+            in.compact();
+            updateInterest();
+        }
+
+        private boolean propose(long lotId, long bidId, long participantId, long price) {
+            try {
+                return handler.propose(lotId, bidId, participantId, price);
+            } catch (RuntimeException e) {
+                handlerErrors.increment();
+                log("Handler failed on bid " + bidId + ": " + e);
+                return false;
+            }
+        }
+
+        private void write() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+        }
+
+        private void updateInterest() {
+            // stop reading while responses are stuck, so a slow client can't make us buffer unboundedly
+            key.interestOps(out.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            releaseBuffer(in);
+            releaseBuffer(out);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package course.concurrency.exams.auction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-ahead log of accepted bids in a memory-mapped file of fixed-size records.
+ * Appending reserves a slot with one getAndIncrement and writes into it, so writers
+ * never share a lock; the record's type is written last with a release store and marks
+ * it as complete. A slot can be reserved before the bid is applied, so a full journal is
+ * detected before anything changes, and released if the bid loses; released slots are
+ * reserved again before new ones. The last slot is kept for the stop record, so stopping
+ * never fails on a full journal.
+ *
+ * Records survive a crash of the process as soon as they are written to the mapping.
+ * A background thread forces the file to disk once per flush interval (group commit),
+ * so an OS crash or power loss can lose the bids of the last interval; the stop record
+ * is forced right away.
+ *
+ * Recovery doesn't depend on record order: the latest bid is the highest-priced one,
+ * and the auction is stopped if the stop record is present. Slots reserved by writers
+ * that crashed before finishing are skipped.
+ */
+public class BidJournal implements AutoCloseable {
+
+    // same byte order as the buffer's own getInt and putInt
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    static final int RECORD_SIZE = 32;
+
+    private static final int BID = 1;
+    private static final int STOP = 2;
+    // reserved slot of a bid that lost, keeps the run of records unbroken for recovery
+    private static final int VOID = 3;
+    private static final long NULL = Long.MIN_VALUE;
+    // only in-flight writers leave holes, so a longer run of empty slots is the end of the journal
+    private static final int MAX_HOLE = 4096;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int bidSlots;
+    private final AtomicLong nextSlot;
+    private final Queue<Long> releasedSlots = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService flusher;
+    private volatile long forcedSlots;
+
+    private final Bid recoveredBid;
+    private final boolean recoveredStopped;
+
+    public BidJournal(Path file, int capacity, long flushIntervalMillis) {
+        if (capacity < 1 || (long) capacity * RECORD_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + Integer.MAX_VALUE / RECORD_SIZE);
+        }
+        this.bidSlots = capacity - 1;
+        try {
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Bid latest = null;
+        boolean stopped = false;
+        int end = 0;
+        for (int slot = 0, hole = 0; slot < bidSlots && hole < MAX_HOLE; slot++) {
+            int type = typeOf(slot);
+            if (type != BID && type != VOID) {
+                hole++;
+                continue;
+            }
+            hole = 0;
+            end = slot + 1;
+            if (type == BID) {
+                latest = higher(latest, readBid(slot));
+            } else {
+                releasedSlots.add((long) slot);
+            }
+        }
+        if (typeOf(bidSlots) == STOP) {
+            stopped = true;
+            latest = higher(latest, readBid(bidSlots));
+        }
+        this.recoveredBid = latest;
+        this.recoveredStopped = stopped;
+        this.nextSlot = new AtomicLong(end);
+        this.forcedSlots = end;
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("BidJournal_flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::sync, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void append(Bid bid) {
+        write(reserve(), BID, bid);
+    }
+
+    /**
+     * Reserves a slot for a bid that is about to be applied. The slot must then be
+     * either written with write(slot, bid) or given back with release(slot).
+     *
+     * @throws IllegalStateException if the journal is full
+     */
+    public long reserve() {
+        Long released = releasedSlots.poll();
+        if (released != null) {
+            return released;
+        }
+        long slot = nextSlot.getAndIncrement();
+        if (slot >= bidSlots) {
+            throw new IllegalStateException("Journal is full: " + bidSlots + " bid records");
+        }
+        return slot;
+    }
+
+    public void write(long slot, Bid bid) {
+        write(slot, BID, bid);
+    }
+
+    public void release(long slot) {
+        INTS.setRelease(buffer, (int) slot * RECORD_SIZE + 24, VOID);
+        releasedSlots.add(slot);
+    }
+
+    // the stop record keeps the final bid, so a journal holding only it still recovers the winner
+    public synchronized void appendStop(Bid finalBid) {
+        write(bidSlots, STOP, finalBid);
+        buffer.force();
+    }
+
+    private void write(long slot, int type, Bid bid) {
+        int offset = (int) slot * RECORD_SIZE;
+        buffer.putLong(offset, orNull(bid.getId()));
+        buffer.putLong(offset + 8, orNull(bid.getParticipantId()));
+        buffer.putLong(offset + 16, bid.getPrice());
+        // a reader that sees the type sees the whole record
+        INTS.setRelease(buffer, offset + 24, type);
+    }
+
+    // forces everything appended so far to disk, once for all records since the last call
+    public synchronized void sync() {
+        long appended = Math.min(nextSlot.get(), bidSlots);
+        if (appended > forcedSlots) {
+            buffer.force();
+            forcedSlots = appended;
+        }
+    }
+
+    // highest-priced bid found in the journal when it was opened, null for an empty one
+    public Bid getRecoveredBid() {
+        return recoveredBid;
+    }
+
+    public boolean isRecoveredStopped() {
+        return recoveredStopped;
+    }
+
+    // bid slots taken from the file, released ones stay counted while waiting for reuse
+    public long size() {
+        return Math.min(nextSlot.get(), bidSlots);
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int typeOf(int slot) {
+        return (int) INTS.getAcquire(buffer, slot * RECORD_SIZE + 24);
+    }
+
+    private Bid readBid(int slot) {
+        int offset = slot * RECORD_SIZE;
+        return new Bid(nullable(buffer.getLong(offset)), nullable(buffer.getLong(offset + 8)),
+                buffer.getLong(offset + 16));
+    }
+
+    private static Bid higher(Bid latest, Bid bid) {
+        return latest == null || bid.getPrice() > latest.getPrice() ? bid : latest;
+    }
+
+    private static long orNull(Long value) {
+        return value == null ? NULL : value;
+    }
+
+    private static Long nullable(long value) {
+        return value == NULL ? null : value;
+    }
+}
@@ -0,0 +1,229 @@
+package course.concurrency.exams.auction;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Captures proposals into a compact binary trace that BidTraceReplayer can play back.
+ * The trace is a header followed by chunks. A chunk is its sequence number and record count,
+ * then one record per proposal: time since the previous record of the chunk in nanoseconds
+ * (the first one since the recorder was created), participant id, price and lot id.
+ * Every number is a zig-zag varint. Bid ids are not stored, replay numbers bids in trace order.
+ * <p>
+ * Every recording thread appends to its own chunk, so recording doesn't add a shared lock
+ * to the contention being captured. A full chunk gets the next sequence number and goes to
+ * a writer thread, which writes and flushes it; the replayer merges chunks by time and
+ * sequence. Memory stays bounded: a thread that fills chunks faster than they are written
+ * waits for the writer. A crash loses only the chunks not written yet. close() writes the
+ * partly filled chunks and must be called after the recording threads are done.
+ */
+public class BidTraceRecorder implements AutoCloseable {
+
+    static final int MAGIC = 0x42_49_44_54;
+    static final int VERSION = 2;
+    static final long NO_PARTICIPANT = Long.MIN_VALUE;
+
+    static final int CHUNK_RECORDS = 4096;
+    private static final int QUEUED_CHUNKS = 16;
+    private static final Chunk END = new Chunk(-1, new long[0], 0);
+
+    private final DataOutputStream out;
+    private final long startTime = System.nanoTime();
+    private final List<ThreadBuffer> buffers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ThreadBuffer> buffer = ThreadLocal.withInitial(this::register);
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+    private final LongAdder count = new LongAdder();
+    private final Thread writer;
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+
+    public BidTraceRecorder(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.writer = new Thread(this::writeChunks);
+        writer.setName("BidTraceRecorder_writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return auction that records every proposal for the given lot before passing it to the wrapped one
+     */
+    public Auction record(Auction auction, long lotId) {
+        return new Auction() {
+            public boolean propose(Bid bid) {
+                append(lotId, bid);
+                return auction.propose(bid);
+            }
+
+            public Bid getLatestBid() {
+                return auction.getLatestBid();
+            }
+        };
+    }
+
+    public void append(long lotId, Bid bid) {
+        if (closed) {
+            throw new IllegalStateException("Recorder is closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+        long participant = bid.getParticipantId() == null ? NO_PARTICIPANT : bid.getParticipantId();
+        Chunk full = buffer.get().append(System.nanoTime() - startTime, participant, bid.getPrice(), lotId);
+        count.increment();
+        if (full != null) {
+            hand(full);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ThreadBuffer threadBuffer : buffers) {
+            Chunk rest = threadBuffer.take();
+            if (rest != null) {
+                hand(rest);
+            }
+        }
+        hand(END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    private void hand(Chunk chunk) {
+        try {
+            chunks.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the trace writer", e);
+        }
+    }
+
+    private void writeChunks() {
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (chunk == END) {
+                return;
+            }
+            // after a failure chunks are still taken, so recording threads don't wait forever
+            if (failure == null) {
+                try {
+                    writeChunk(chunk);
+                    out.flush();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    private void writeChunk(Chunk chunk) throws IOException {
+        writeVarLong(chunk.sequence);
+        writeVarLong(chunk.size);
+        long lastTime = 0;
+        long[] records = chunk.records;
+        for (int i = 0; i < chunk.size * ThreadBuffer.FIELDS; i += ThreadBuffer.FIELDS) {
+            writeVarLong(records[i] - lastTime);
+            writeVarLong(records[i + 1]);
+            writeVarLong(records[i + 2]);
+            writeVarLong(records[i + 3]);
+            lastTime = records[i];
+        }
+    }
+
+    private ThreadBuffer register() {
+        ThreadBuffer threadBuffer = new ThreadBuffer();
+        buffers.add(threadBuffer);
+        return threadBuffer;
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int) zigZag);
+    }
+
+    // current chunk of one thread: time, participant, price and lot; the lock is only taken by its owner and close()
+    private class ThreadBuffer {
+        private static final int FIELDS = 4;
+
+        private long[] records = new long[FIELDS * CHUNK_RECORDS];
+        private int size;
+
+        // returns the chunk if this record filled it
+        synchronized Chunk append(long time, long participant, long price, long lot) {
+            int i = size * FIELDS;
+            records[i] = time;
+            records[i + 1] = participant;
+            records[i + 2] = price;
+            records[i + 3] = lot;
+            size++;
+            return size == CHUNK_RECORDS ? take() : null;
+        }
+
+        // sequence is taken under the lock, so chunks of one thread are numbered in their order
+        synchronized Chunk take() {
+            if (size == 0) {
+                return null;
+            }
+            Chunk chunk = new Chunk(nextSequence.getAndIncrement(), records, size);
+            records = new long[FIELDS * CHUNK_RECORDS];
+            size = 0;
+            return chunk;
+        }
+    }
+
+    private static class Chunk {
+        private final long sequence;
+        private final long[] records;
+        private final int size;
+
+        Chunk(long sequence, long[] records, int size) {
+            this.sequence = sequence;
+            this.records = records;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package course.concurrency.exams.auction;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+/**
+ * Replays a trace written by BidTraceRecorder against any auction.
+ * Records are split between threads by participant, so even a single-lot bidding war is
+ * replayed by concurrent threads, while every participant's bids keep their recorded order.
+ * Bids without a participant are dealt round-robin. Every thread waits for each record's
+ * recorded time, so the interleaving of threads follows the trace as closely as timing allows.
+ * With speedup 1 the recorded timing is kept, a bigger speedup compresses it,
+ * and Double.POSITIVE_INFINITY replays as fast as possible.
+ */
+public class BidTraceReplayer {
+
+    private final long[] times;
+    private final long[] participants;
+    private final long[] prices;
+    private final long[] lots;
+    private final int size;
+
+    public BidTraceReplayer(InputStream in) {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        List<Chunk> chunks = new ArrayList<>();
+        int total = 0;
+        try {
+            if (data.readInt() != BidTraceRecorder.MAGIC || data.readInt() != BidTraceRecorder.VERSION) {
+                throw new IllegalArgumentException("Not a bid trace or unsupported version");
+            }
+            Chunk chunk;
+            do {
+                chunk = Chunk.read(data);
+                if (chunk == null) {
+                    break;
+                }
+                chunks.add(chunk);
+                total += chunk.size;
+                // a chunk cut short by a crash of the recorder ends the trace
+            } while (chunk.complete);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.times = new long[total];
+        this.participants = new long[total];
+        this.prices = new long[total];
+        this.lots = new long[total];
+        this.size = total;
+
+        // chunks of one thread are in time order, merging them restores the recorded interleaving
+        PriorityQueue<Chunk> cursors = new PriorityQueue<>(Comparator.comparingLong(Chunk::time)
+                .thenComparingLong(chunk -> chunk.sequence));
+        for (Chunk chunk : chunks) {
+            if (chunk.size > 0) {
+                cursors.add(chunk);
+            }
+        }
+        Chunk chunk;
+        int next = 0;
+        while ((chunk = cursors.poll()) != null) {
+            int i = chunk.position++;
+            times[next] = chunk.times[i];
+            participants[next] = chunk.participants[i];
+            prices[next] = chunk.prices[i];
+            lots[next] = chunk.lots[i];
+            next++;
+            if (chunk.position < chunk.size) {
+                cursors.add(chunk);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Report replay(Auction auction, int threads, double speedup) {
+        return replay(lotId -> auction, threads, speedup);
+    }
+
+    public Report replay(LongFunction<Auction> auctionByLot, int threads, double speedup) {
+        if (threads < 1 || speedup <= 0) {
+            throw new IllegalArgumentException("Threads and speedup must be greater than 0");
+        }
+        int[][] assigned = assign(threads);
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder accepted = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long[] startTime = new long[1];
+        for (int t = 0; t < threads; t++) {
+            int[] records = assigned[t];
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i : records) {
+                    waitUntil(startTime[0] + (long) (times[i] / speedup));
+                    long participant = participants[i];
+                    Bid bid = new Bid((long) i, participant == BidTraceRecorder.NO_PARTICIPANT ? null : participant, prices[i]);
+                    long before = System.nanoTime();
+                    if (auctionByLot.apply(lots[i]).propose(bid)) {
+                        accepted.increment();
+                    }
+                    latency.record(System.nanoTime() - before);
+                }
+            });
+            workers[t].setName("BidTraceReplayer_" + t);
+            workers[t].start();
+        }
+
+        startTime[0] = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        long elapsed = System.nanoTime() - startTime[0];
+        return new Report(size, accepted.sum(), elapsed, latency.snapshot());
+    }
+
+    // record indexes of every worker in trace order, built in a single pass
+    private int[][] assign(int threads) {
+        int[] workerOf = new int[size];
+        int[] counts = new int[threads];
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            long participant = participants[i];
+            int worker = participant == BidTraceRecorder.NO_PARTICIPANT
+                    ? next++ % threads
+                    : Math.floorMod(Long.hashCode(participant), threads);
+            workerOf[i] = worker;
+            counts[worker]++;
+        }
+        int[][] assigned = new int[threads][];
+        for (int t = 0; t < threads; t++) {
+            assigned[t] = new int[counts[t]];
+            counts[t] = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            int worker = workerOf[i];
+            assigned[worker][counts[worker]++] = i;
+        }
+        return assigned;
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > TimeUnit.MICROSECONDS.toNanos(100)) {
+                LockSupport.parkNanos(remaining - TimeUnit.MICROSECONDS.toNanos(50));
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    private static class Chunk {
+        private final long sequence;
+        private final long[] times;
+        private final long[] participants;
+        private final long[] prices;
+        private final long[] lots;
+        private int size;
+        private boolean complete;
+        private int position;
+
+        private Chunk(long sequence, int capacity) {
+            this.sequence = sequence;
+            this.times = new long[capacity];
+            this.participants = new long[capacity];
+            this.prices = new long[capacity];
+            this.lots = new long[capacity];
+        }
+
+        // null at the end of the trace
+        static Chunk read(DataInputStream in) throws IOException {
+            long sequence;
+            try {
+                sequence = readVarLong(in);
+            } catch (EOFException e) {
+                return null;
+            }
+            Chunk chunk;
+            try {
+                int count = (int) readVarLong(in);
+                chunk = new Chunk(sequence, Math.min(count, BidTraceRecorder.CHUNK_RECORDS));
+            } catch (EOFException e) {
+                return null;
+            }
+            long time = 0;
+            try {
+                for (int i = 0; i < chunk.times.length; i++) {
+                    time += readVarLong(in);
+                    chunk.times[i] = time;
+                    chunk.participants[i] = readVarLong(in);
+                    chunk.prices[i] = readVarLong(in);
+                    chunk.lots[i] = readVarLong(in);
+                    chunk.size++;
+                }
+                chunk.complete = true;
+            } catch (EOFException e) {
+                // keeps the records read in full
+            }
+            return chunk;
+        }
+
+        long time() {
+            return times[position];
+        }
+    }
+
+    public static class Report {
+        private final long proposals;
+        private final long accepted;
+        private final long elapsedNanos;
+        private final LatencyHistogram.Snapshot latency;
+
+        Report(long proposals, long accepted, long elapsedNanos, LatencyHistogram.Snapshot latency) {
+            this.proposals = proposals;
+            this.accepted = accepted;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+
+        public long getProposals() {
+            return proposals;
+        }
+
+        public long getAccepted() {
+            return accepted;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        // proposals per second
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : proposals * 1e9 / elapsedNanos;
+        }
+
+        // latency of a single propose call in nanoseconds
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("proposals=%d, accepted=%d, throughput=%.0f/s, latency ns: %s",
+                    proposals, accepted, getThroughput(), latency);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package course.concurrency.exams.auction;
+
+/**
+ * Winning bid of a second-price auction together with the price the winner pays.
+ * Without a second bid the winner pays the reserve price; without any bid
+ * both the winner's and the clearing price are -1.
+ */
+public class ClearedBid extends Bid {
+
+    private final Long clearingPrice;
+    private final boolean secondBid;
+
+    public ClearedBid(Bid winner, Long clearingPrice, boolean secondBid) {
+        super(winner.getId(), winner.getParticipantId(), winner.getPrice());
+        this.clearingPrice = clearingPrice;
+        this.secondBid = secondBid;
+    }
+
+    public Long getClearingPrice() {
+        return clearingPrice;
+    }
+
+    /**
+     * @return true if the clearing price is the second-highest bid, not the reserve price
+     */
+    public boolean hasSecondBid() {
+        return secondBid;
+    }
+}
@@ -0,0 +1,136 @@
+package course.concurrency.exams.auction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Notifier that keeps only the latest outdated bid per participant.
+ * Pending bids are flushed every window and sent in batches by a few worker threads,
+ * one imitated send per batch instead of one per outbid event. At most two batches per
+ * worker are in flight: while the workers are behind, a flush leaves the rest of the bids
+ * pending, where they keep coalescing, so queued work stays bounded under sustained load.
+ */
+public class CoalescingNotifier extends Notifier {
+
+    private final ConcurrentHashMap<Long, Bid> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flushScheduler;
+    private final int batchSize;
+    private final int maxInFlightBatches;
+    private final AtomicInteger inFlightBatches = new AtomicInteger();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    public CoalescingNotifier() {
+        this(50, 4, 256);
+    }
+
+    public CoalescingNotifier(long windowMillis, int workers, int batchSize) {
+        super(Executors.newFixedThreadPool(workers, daemon("CoalescingNotifier_worker")));
+        if (windowMillis < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Window and batch size must be greater than 0");
+        }
+        this.batchSize = batchSize;
+        this.maxInFlightBatches = workers * 2;
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(daemon("CoalescingNotifier_flusher"));
+        flushScheduler.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void sendOutdatedMessage(Bid bid) {
+        // initial bid of an auction has nobody to notify
+        if (bid.getParticipantId() == null) {
+            return;
+        }
+        received.increment();
+        pending.merge(bid.getParticipantId(), bid, CoalescingNotifier::latest);
+    }
+
+    @Override
+    public void sendOutdatedMessage(long bidId, long participantId, long price) {
+        if (price < 0) {
+            return;
+        }
+        sendOutdatedMessage(new Bid(bidId, participantId, price));
+    }
+
+    void flush() {
+        List<Bid> batch = new ArrayList<>(batchSize);
+        for (Long participantId : pending.keySet()) {
+            if (batch.isEmpty() && inFlightBatches.get() >= maxInFlightBatches) {
+                break;
+            }
+            Bid bid = pending.remove(participantId);
+            if (bid == null) {
+                continue;
+            }
+            batch.add(bid);
+            if (batch.size() == batchSize) {
+                sendBatch(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            sendBatch(batch);
+        }
+    }
+
+    private void sendBatch(List<Bid> batch) {
+        batches.increment();
+        sent.add(batch.size());
+        inFlightBatches.incrementAndGet();
+        submit(() -> {
+            try {
+                imitateSending();
+            } finally {
+                inFlightBatches.decrementAndGet();
+            }
+        });
+    }
+
+    private static Bid latest(Bid current, Bid candidate) {
+        return candidate.getPrice() >= current.getPrice() ? candidate : current;
+    }
+
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return participants whose latest outdated bid waits for the next flush
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void shutdown() {
+        flushScheduler.shutdownNow();
+        super.shutdown();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName(name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package course.concurrency.exams.auction;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes bids to subscribers with conflation: every subscriber has a buffer of one bid,
+ * and a newer (higher) bid replaces an undelivered one. A subscriber that falls behind
+ * only ever receives the newest price, and publishing never blocks on a slow subscriber.
+ * complete() delivers the final bid as the last onNext, followed by onComplete.
+ */
+public class ConflatingBidPublisher implements Flow.Publisher<Bid> {
+
+    private final Executor executor;
+    private final List<ConflatingSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile Bid finalBid;
+
+    public ConflatingBidPublisher() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ConflatingBidPublisher(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Bid> subscriber) {
+        ConflatingSubscription subscription = new ConflatingSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        Bid result = finalBid;
+        if (result != null) {
+            subscription.complete(result);
+        }
+    }
+
+    public void publish(Bid bid) {
+        for (ConflatingSubscription subscription : subscriptions) {
+            subscription.offer(bid);
+        }
+    }
+
+    public void complete(Bid result) {
+        finalBid = result;
+        for (ConflatingSubscription subscription : subscriptions) {
+            subscription.complete(result);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    private class ConflatingSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Bid> subscriber;
+        private final AtomicReference<Bid> pending = new AtomicReference<>();
+        private final AtomicReference<Bid> result = new AtomicReference<>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        // accessed only by the draining thread
+        private long lastPrice = Long.MIN_VALUE;
+        private boolean terminated = false;
+
+        ConflatingSubscription(Flow.Subscriber<? super Bid> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(Bid bid) {
+            pending.accumulateAndGet(bid, (current, next) ->
+                    current == null || next.getPrice() > current.getPrice() ? next : current);
+            schedule();
+        }
+
+        void complete(Bid bid) {
+            if (result.compareAndSet(null, bid)) {
+                schedule();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Requested " + n + " items, must be positive"));
+                return;
+            }
+            demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (cancelled || terminated) {
+                    return;
+                }
+                Bid bid;
+                while (demand.get() > 0 && (bid = pending.getAndSet(null)) != null) {
+                    if (bid.getPrice() > lastPrice) {
+                        lastPrice = bid.getPrice();
+                        demand.decrementAndGet();
+                        subscriber.onNext(bid);
+                    }
+                }
+                Bid last = result.get();
+                if (last != null && pending.get() == null && demand.get() > 0) {
+                    terminated = true;
+                    subscriptions.remove(this);
+                    subscriber.onNext(last);
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
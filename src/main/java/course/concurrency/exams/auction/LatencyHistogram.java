@@ -0,0 +1,182 @@
+package course.concurrency.exams.auction;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory latency histogram with log-linear buckets: values below 32 are exact,
+ * above that every power of two is split into 16 buckets, so a reported value is within
+ * about 6% of the recorded one. Every thread records into its own counters with plain
+ * ordered writes, so recording is wait-free and allocates nothing after the thread's first call.
+ * The histogram can be reused: reset() starts a new interval with fresh counters, which each
+ * thread allocates on its first record in that interval.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF;
+
+    // counters of each bucket followed by count, sum, min and max
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int MIN = BUCKETS + 2;
+    private static final int MAX = BUCKETS + 3;
+    private static final int SIZE = BUCKETS + 4;
+
+    private volatile Interval interval = new Interval();
+
+    // negative values are recorded as 0
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        AtomicLongArray counts = interval.recorder.get();
+        int index = indexOf(v);
+        counts.lazySet(index, counts.get(index) + 1);
+        counts.lazySet(SUM, counts.get(SUM) + v);
+        if (v < counts.get(MIN)) {
+            counts.lazySet(MIN, v);
+        }
+        if (v > counts.get(MAX)) {
+            counts.lazySet(MAX, v);
+        }
+        // written last: a snapshot that sees this count sees the bucket too
+        counts.set(COUNT, counts.get(COUNT) + 1);
+    }
+
+    /**
+     * Copy of all values recorded since the last reset. Count and percentiles of the snapshot
+     * are computed from the same copied buckets, so they agree with each other. Sum, min and
+     * max are read separately: while other threads record, the mean may include a few values
+     * that the count doesn't, or the other way round.
+     */
+    public Snapshot snapshot() {
+        return interval.snapshot();
+    }
+
+    /**
+     * Starts a new interval. Values recorded concurrently with the reset may be dropped.
+     */
+    public void reset() {
+        interval = new Interval();
+    }
+
+    /**
+     * Snapshot of the interval that ends with this call, e.g. for per-second reporting.
+     */
+    public Snapshot snapshotAndReset() {
+        Interval previous = interval;
+        interval = new Interval();
+        return previous.snapshot();
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int sub = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF + (sub - HALF);
+    }
+
+    // highest value that falls into the bucket
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int offset = index - SUB_BUCKETS;
+        int shift = offset / HALF + 1;
+        long sub = offset % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    // per-thread counters of one interval between resets
+    private static class Interval {
+        private final List<AtomicLongArray> recorders = new CopyOnWriteArrayList<>();
+        private final ThreadLocal<AtomicLongArray> recorder = ThreadLocal.withInitial(this::register);
+
+        private AtomicLongArray register() {
+            AtomicLongArray counts = new AtomicLongArray(SIZE);
+            counts.set(MIN, Long.MAX_VALUE);
+            recorders.add(counts);
+            return counts;
+        }
+
+        private Snapshot snapshot() {
+            long[] buckets = new long[BUCKETS];
+            long sum = 0;
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            for (AtomicLongArray counts : recorders) {
+                // volatile read of the count makes all earlier records of that thread visible
+                counts.get(COUNT);
+                for (int i = 0; i < BUCKETS; i++) {
+                    buckets[i] += counts.get(i);
+                }
+                sum += counts.get(SUM);
+                min = Math.min(min, counts.get(MIN));
+                max = Math.max(max, counts.get(MAX));
+            }
+            return new Snapshot(buckets, sum, min, max);
+        }
+    }
+
+    public static class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(long[] buckets, long sum, long min, long max) {
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.min = count == 0 ? 0 : min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f (%d-%d) p50=%d p99=%d p99.9=%d",
+                    getMean(), min, max,
+                    getValueAtPercentile(50), getValueAtPercentile(99), getValueAtPercentile(99.9));
+        }
+    }
+}
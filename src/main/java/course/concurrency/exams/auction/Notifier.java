@@ -6,18 +6,30 @@ import java.util.concurrent.ThreadPoolExecutor;
 
 public class Notifier {
 
-    private final ExecutorService executor = Executors.newFixedThreadPool(1_000);
+    private final ExecutorService executor;
 
     public Notifier() {
+        this(Executors.newFixedThreadPool(1_000));
         ((ThreadPoolExecutor) this.executor).prestartAllCoreThreads();
     }
 
+    protected Notifier(ExecutorService executor) {
+        this.executor = executor;
+    }
 
     public void sendOutdatedMessage(Bid bid) {
         executor.submit(this::imitateSending);
     }
 
-    private void imitateSending() {
+    public void sendOutdatedMessage(long bidId, long participantId, long price) {
+        executor.submit(this::imitateSending);
+    }
+
+    protected void submit(Runnable task) {
+        executor.submit(task);
+    }
+
+    protected void imitateSending() {
         try {
             Thread.sleep(2000);
         } catch (InterruptedException e) {
@@ -0,0 +1,170 @@
+package course.concurrency.exams.auction;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Lot state kept off-heap in a direct buffer, 32 bytes per lot: version, price, bid id
+ * and participant id. Lot ids are dense, from 0 to the capacity.
+ *
+ * The version works as a seqlock: a writer CASes the WRITING bit in, updates the fields
+ * and publishes the next version; readers retry until they read the fields between two
+ * equal versions. The STOPPED bit lives in the version too. Prices only grow, so a bid at or
+ * below the stored price is rejected with one volatile read and no write. Bid objects are
+ * created only by getLatestBid and stopAuction.
+ */
+public class OffHeapAuctionStore {
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    static final int LOT_SIZE = 32;
+    private static final int VERSION = 0;
+    private static final int PRICE = 8;
+    private static final int BID_ID = 16;
+    private static final int PARTICIPANT = 24;
+
+    private static final long WRITING = 1;
+    private static final long STOPPED = 2;
+    private static final long VERSION_STEP = 4;
+    private static final long NO_PARTICIPANT = Long.MIN_VALUE;
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final Notifier notifier;
+    private final ByteBuffer lots;
+    private final int capacity;
+
+    public OffHeapAuctionStore(Notifier notifier, int capacity) {
+        if (capacity < 1 || (long) capacity * LOT_SIZE > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + (Integer.MAX_VALUE - 8) / LOT_SIZE);
+        }
+        this.notifier = notifier;
+        this.capacity = capacity;
+        this.lots = ByteBuffer.allocateDirect(capacity * LOT_SIZE + 8).alignedSlice(8).order(ByteOrder.nativeOrder());
+        for (int lot = 0; lot < capacity; lot++) {
+            int base = lot * LOT_SIZE;
+            LONGS.set(lots, base + PRICE, -1L);
+            LONGS.set(lots, base + BID_ID, -1L);
+            LONGS.set(lots, base + PARTICIPANT, NO_PARTICIPANT);
+        }
+        VarHandle.releaseFence();
+    }
+
+    public boolean propose(long lotId, Bid bid) {
+        Long participantId = bid.getParticipantId();
+        return propose(lotId, bid.getId(), participantId == null ? NO_PARTICIPANT : participantId, bid.getPrice());
+    }
+
+    public boolean propose(long lotId, long bidId, long participantId, long price) {
+        int base = baseOf(lotId);
+        int spins = 0;
+        while (true) {
+            if (price <= (long) LONGS.getVolatile(lots, base + PRICE)) {
+                return false;
+            }
+            long version = (long) LONGS.getVolatile(lots, base + VERSION);
+            if ((version & STOPPED) != 0) {
+                return false;
+            }
+            if ((version & WRITING) != 0 || !LONGS.compareAndSet(lots, base + VERSION, version, version | WRITING)) {
+                spins = backoff(spins);
+                continue;
+            }
+
+            long prevPrice = (long) LONGS.get(lots, base + PRICE);
+            if (price <= prevPrice) {
+                LONGS.setVolatile(lots, base + VERSION, version);
+                return false;
+            }
+            long prevBidId = (long) LONGS.get(lots, base + BID_ID);
+            long prevParticipant = (long) LONGS.get(lots, base + PARTICIPANT);
+            LONGS.set(lots, base + BID_ID, bidId);
+            LONGS.set(lots, base + PARTICIPANT, participantId);
+            LONGS.setVolatile(lots, base + PRICE, price);
+            LONGS.setVolatile(lots, base + VERSION, version + VERSION_STEP);
+
+            notifier.sendOutdatedMessage(prevBidId, prevParticipant, prevPrice);
+            return true;
+        }
+    }
+
+    public Bid getLatestBid(long lotId) {
+        int base = baseOf(lotId);
+        int spins = 0;
+        while (true) {
+            long version = (long) LONGS.getVolatile(lots, base + VERSION);
+            if ((version & WRITING) == 0) {
+                long price = (long) LONGS.get(lots, base + PRICE);
+                long bidId = (long) LONGS.get(lots, base + BID_ID);
+                long participantId = (long) LONGS.get(lots, base + PARTICIPANT);
+                VarHandle.acquireFence();
+                if (version == (long) LONGS.getVolatile(lots, base + VERSION)) {
+                    return new Bid(bidId, participantId == NO_PARTICIPANT ? null : participantId, price);
+                }
+            }
+            spins = backoff(spins);
+        }
+    }
+
+    public boolean isStopped(long lotId) {
+        return ((long) LONGS.getVolatile(lots, baseOf(lotId) + VERSION) & STOPPED) != 0;
+    }
+
+    // stop auction on the lot and return its latest bid
+    public Bid stopAuction(long lotId) {
+        int base = baseOf(lotId);
+        int spins = 0;
+        while (true) {
+            long version = (long) LONGS.getVolatile(lots, base + VERSION);
+            if ((version & STOPPED) != 0) {
+                return getLatestBid(lotId);
+            }
+            if ((version & WRITING) == 0 && LONGS.compareAndSet(lots, base + VERSION, version, version | STOPPED)) {
+                return getLatestBid(lotId);
+            }
+            spins = backoff(spins);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Single-lot view of the store. It holds no state, so it can be created per call.
+     */
+    public AuctionStoppable getAuction(long lotId) {
+        baseOf(lotId);
+        return new AuctionStoppable() {
+            public boolean propose(Bid bid) {
+                return OffHeapAuctionStore.this.propose(lotId, bid);
+            }
+
+            public Bid getLatestBid() {
+                return OffHeapAuctionStore.this.getLatestBid(lotId);
+            }
+
+            public Bid stopAuction() {
+                return OffHeapAuctionStore.this.stopAuction(lotId);
+            }
+        };
+    }
+
+    private int baseOf(long lotId) {
+        if (lotId < 0 || lotId >= capacity) {
+            throw new IllegalArgumentException("Lot id must be between 0 and " + (capacity - 1) + ": " + lotId);
+        }
+        return (int) lotId * LOT_SIZE;
+    }
+
+    private static int backoff(int spins) {
+        if (++spins % SPINS_BEFORE_YIELD == 0) {
+            // the writer may be descheduled when threads outnumber cores
+            Thread.yield();
+        } else {
+            Thread.onSpinWait();
+        }
+        return spins;
+    }
+}
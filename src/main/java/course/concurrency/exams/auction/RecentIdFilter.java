@@ -0,0 +1,82 @@
+package course.concurrency.exams.auction;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free set of recently seen ids. The table is split into buckets of
+ * 8 slots (one cache line); an id always goes to the first free slot of its bucket or,
+ * when the bucket is full, replaces the slot its hash points to. Since the slot choice
+ * is deterministic, two threads adding the same id race on the same slot and only one wins.
+ * Old ids get evicted, so a very late retry may pass, but a new id is never reported as seen.
+ */
+public class RecentIdFilter {
+
+    private static final int BUCKET_SIZE = 8;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final AtomicLongArray slots;
+    private final int bucketMask;
+
+    public RecentIdFilter(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        int buckets = Math.max(1, Integer.highestOneBit(Math.max(capacity / BUCKET_SIZE, 1) * 2 - 1));
+        this.slots = new AtomicLongArray(buckets * BUCKET_SIZE);
+        this.bucketMask = buckets - 1;
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * @return true if the id wasn't seen recently and is now remembered
+     */
+    public boolean add(long id) {
+        if (id == EMPTY) {
+            return true;
+        }
+        long hash = mix(id);
+        int bucket = ((int) hash & bucketMask) * BUCKET_SIZE;
+        int victim = bucket + (int) (hash >>> 60) % BUCKET_SIZE;
+        while (true) {
+            int free = -1;
+            for (int i = bucket; i < bucket + BUCKET_SIZE; i++) {
+                long current = slots.get(i);
+                if (current == id) {
+                    return false;
+                }
+                if (current == EMPTY && free < 0) {
+                    free = i;
+                }
+            }
+            int slot = free >= 0 ? free : victim;
+            long expected = free >= 0 ? EMPTY : slots.get(victim);
+            if (expected == id) {
+                return false;
+            }
+            if (slots.compareAndSet(slot, expected, id)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean contains(long id) {
+        int bucket = ((int) mix(id) & bucketMask) * BUCKET_SIZE;
+        for (int i = bucket; i < bucket + BUCKET_SIZE; i++) {
+            if (slots.get(i) == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    private static long mix(long id) {
+        long h = id * 0x9E37_79B9_7F4A_7C15L;
+        return h ^ (h >>> 32);
+    }
+}
@@ -0,0 +1,135 @@
+package course.concurrency.exams.auction;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Notifier that models the send latency with a timer instead of a sleeping thread.
+ * Each send completes its future after the latency on one scheduler thread,
+ * so startup cost and memory don't depend on the number of sends in flight.
+ * Sends over the in-flight limit are rejected and counted. Shutting down cancels
+ * the futures of sends still in flight and rejects any later sendAsync.
+ */
+public class ScheduledNotifier extends Notifier {
+
+    private final ScheduledExecutorService scheduler;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final long latencyMillis;
+    private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopped = false;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ScheduledNotifier() {
+        this(2000, 10_000);
+    }
+
+    public ScheduledNotifier(long latencyMillis, int maxInFlight) {
+        this(Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("ScheduledNotifier");
+            thread.setDaemon(true);
+            return thread;
+        }), latencyMillis, maxInFlight);
+    }
+
+    private ScheduledNotifier(ScheduledExecutorService scheduler, long latencyMillis, int maxInFlight) {
+        super(scheduler);
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("In-flight limit must be greater than 0");
+        }
+        this.scheduler = scheduler;
+        this.latencyMillis = latencyMillis;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public void sendOutdatedMessage(Bid bid) {
+        trySchedule(this::complete);
+    }
+
+    @Override
+    public void sendOutdatedMessage(long bidId, long participantId, long price) {
+        trySchedule(this::complete);
+    }
+
+    /**
+     * @return future completed when the imitated send is over,
+     * failed with RejectedExecutionException if too many sends are in flight or the notifier is shut down,
+     * or with CancellationException if it is shut down before the send is over
+     */
+    public CompletableFuture<Void> sendAsync() {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (stopped) {
+            rejected.increment();
+            result.completeExceptionally(new RejectedExecutionException("Notifier is shut down"));
+            return result;
+        }
+        // added before scheduling: either shutdown() sees it, or the scheduler rejects it
+        pending.add(result);
+        boolean scheduled = trySchedule(() -> {
+            complete();
+            pending.remove(result);
+            result.complete(null);
+        });
+        if (!scheduled) {
+            pending.remove(result);
+            result.completeExceptionally(new RejectedExecutionException(stopped
+                    ? "Notifier is shut down" : "Too many notifications in flight"));
+        }
+        return result;
+    }
+
+    @Override
+    public void shutdown() {
+        stopped = true;
+        super.shutdown();
+        for (CompletableFuture<Void> future : pending) {
+            pending.remove(future);
+            future.completeExceptionally(new CancellationException("Notifier is shut down"));
+        }
+    }
+
+    private boolean trySchedule(Runnable completion) {
+        if (!inFlight.tryAcquire()) {
+            rejected.increment();
+            return false;
+        }
+        try {
+            scheduler.schedule(completion, latencyMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            rejected.increment();
+            return false;
+        }
+    }
+
+    private void complete() {
+        inFlight.release();
+        completed.increment();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+}
@@ -0,0 +1,12 @@
+package course.concurrency.exams.auction;
+
+/**
+ * Final bid of a stopped auction. Storing it in place of the latest bid
+ * keeps the stopped flag in the same atomic word as the bid itself.
+ */
+class StoppedBid extends Bid {
+
+    StoppedBid(Bid bid) {
+        super(bid.getId(), bid.getParticipantId(), bid.getPrice());
+    }
+}
@@ -0,0 +1,113 @@
+package course.concurrency.exams.refactoring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Versioned log of mount table changes. Every change gets the next version, so a router
+ * that holds version v needs only the changes after v instead of the whole table.
+ * The log keeps a bounded history; routers behind it fall back to a full refresh.
+ */
+public class MountTableLog {
+
+    private final ConcurrentSkipListMap<Long, Change> changes = new ConcurrentSkipListMap<>();
+    private final int retainedChanges;
+    private volatile long version;
+    /**
+     * Highest version dropped from the history. Routers below it can't be refreshed incrementally.
+     */
+    private volatile long compactedVersion;
+
+    public MountTableLog(int retainedChanges) {
+        if (retainedChanges <= 0) {
+            throw new IllegalArgumentException("Retained changes count must be greater than 0");
+        }
+        this.retainedChanges = retainedChanges;
+    }
+
+    /**
+     * @return version of the table after the change
+     */
+    public long put(String path, String destination) {
+        return append(path, destination);
+    }
+
+    public long remove(String path) {
+        return append(path, null);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return changes after the given version in version order, or null if part of them
+     * was already compacted and the router needs a full refresh
+     */
+    public List<Change> changesSince(long fromVersion) {
+        long toVersion = version;
+        if (fromVersion >= toVersion) {
+            return List.of();
+        }
+        if (fromVersion < compactedVersion) {
+            return null;
+        }
+        ConcurrentNavigableMap<Long, Change> tail = changes.subMap(fromVersion, false, toVersion, true);
+        List<Change> result = new ArrayList<>(tail.values());
+        // compaction advances compactedVersion before dropping entries, so a concurrent drop is visible here
+        if (fromVersion < compactedVersion) {
+            return null;
+        }
+        return result;
+    }
+
+    private synchronized long append(String path, String destination) {
+        long next = version + 1;
+        changes.put(next, new Change(next, path, destination));
+        version = next;
+        while (changes.size() > retainedChanges) {
+            long oldest = changes.firstKey();
+            compactedVersion = oldest;
+            changes.remove(oldest);
+        }
+        return next;
+    }
+
+    public static class Change {
+        private final long version;
+        private final String path;
+        private final String destination;
+
+        private Change(long version, String path, String destination) {
+            this.version = version;
+            this.path = path;
+            this.destination = destination;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return new destination of the mount point or null if it was removed
+         */
+        public String getDestination() {
+            return destination;
+        }
+
+        public boolean isRemoval() {
+            return destination == null;
+        }
+
+        @Override
+        public String toString() {
+            return "Change [version=" + version + ", path=" + path + ", destination=" + destination + "]";
+        }
+    }
+}
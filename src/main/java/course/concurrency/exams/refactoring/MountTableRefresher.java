@@ -1,5 +1,7 @@
 package course.concurrency.exams.refactoring;
 
+import java.util.List;
+
 import static course.concurrency.exams.refactoring.Others.MountTableManager;
 
 public class MountTableRefresher {
@@ -9,12 +11,31 @@ public class MountTableRefresher {
      */
     private final String adminAddress;
     private final MountTableManager manager;
+    /**
+     * Source of incremental changes, null to always do a full refresh.
+     */
+    private final MountTableLog mountTableLog;
+    /**
+     * Mount table version the router holds, as far as this refresher knows.
+     */
+    private volatile long version;
     private volatile boolean success;
 
     public MountTableRefresher(MountTableManager manager,
                                String adminAddress) {
+        this(manager, adminAddress, null, 0);
+    }
+
+    /**
+     * @param knownVersion version the router was last refreshed to, a manager created
+     * for this refresh may not know it
+     */
+    public MountTableRefresher(MountTableManager manager,
+                               String adminAddress, MountTableLog mountTableLog, long knownVersion) {
         this.manager = manager;
         this.adminAddress = adminAddress;
+        this.mountTableLog = mountTableLog;
+        this.version = knownVersion;
     }
 
     /**
@@ -28,9 +49,31 @@ public class MountTableRefresher {
      * routers. Because add mount table entry is invoked on R1, R1 will update the
      * cache locally it need not to make RPC call. But R1 will make RPC calls to
      * update cache on R2 and R3.
+     * <p>
+     * With a mount table log the router gets only the changes after the version
+     * it reports, and a full refresh only if those changes are no longer retained.
      */
     public void refresh() {
-        success = manager.refresh();
+        success = mountTableLog == null ? manager.refresh() : refreshIncrementally();
+    }
+
+    private boolean refreshIncrementally() {
+        long fromVersion = Math.max(version, manager.getVersion());
+        List<MountTableLog.Change> changes = mountTableLog.changesSince(fromVersion);
+        if (changes == null) {
+            // the full table holds at least every change logged before the refresh started
+            long toVersion = mountTableLog.getVersion();
+            if (!manager.refresh()) {
+                return false;
+            }
+            version = toVersion;
+            return true;
+        }
+        if (!changes.isEmpty() && !manager.applyChanges(changes)) {
+            return false;
+        }
+        version = changes.isEmpty() ? fromVersion : changes.get(changes.size() - 1).getVersion();
+        return true;
     }
 
     /**
@@ -46,6 +89,14 @@ public class MountTableRefresher {
                 + adminAddress + "]";
     }
 
+    /**
+     * @return mount table version the router holds after a successful refresh with a mount
+     * table log, otherwise the version known before the refresh
+     */
+    public long getVersion() {
+        return version;
+    }
+
     public String getAdminAddress() {
         return adminAddress;
     }
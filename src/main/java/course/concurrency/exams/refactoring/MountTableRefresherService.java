@@ -3,7 +3,11 @@ package course.concurrency.exams.refactoring;
 import org.springframework.util.StringUtils;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -19,6 +23,11 @@ import java.util.stream.Collectors;
 
 public class MountTableRefresherService {
 
+    private static final int ROUTER_CLIENTS_CACHE_MAX_SIZE = 1024;
+    private static final int MOUNT_TABLE_RETAINED_CHANGES = 10_000;
+    private static final double TIMEOUT_PERCENTILE = 0.99;
+    private static final double TIMEOUT_HEADROOM = 2.0;
+
     private final AtomicLong threadCounter = new AtomicLong();
     private final ExecutorService mountTableRefresherExecutor = Executors.newFixedThreadPool(
             Runtime.getRuntime().availableProcessors(),
@@ -28,9 +37,41 @@ public class MountTableRefresherService {
                 thread.setDaemon(true);
                 return thread;
             });
-    private final ReentrantLock cacheUpdateInProgressIndicator = new ReentrantLock();
+    private final ExecutorService refreshCoordinator = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setName("MountTableRefresh_Coordinator");
+                thread.setDaemon(true);
+                return thread;
+            });
+    /**
+     * Guards the refresh rounds: at most one is running and at most one is waiting to start.
+     * Callers arriving while a round runs join the waiting round, so their changes are
+     * propagated by a round that starts after them.
+     */
+    private final ReentrantLock refreshRoundsLock = new ReentrantLock();
+    private RefreshRound runningRound;
+    private RefreshRound pendingRound;
+    private long refreshGeneration;
+    private volatile long completedRefreshGeneration;
     private Others.RouterStore routerStore = new Others.RouterStore();
     private long cacheUpdateTimeout;
+    /**
+     * Bounds of per router timeouts derived from observed latency. While they are not set
+     * every router gets cacheUpdateTimeout.
+     */
+    private long minCacheUpdateTimeout;
+    private long maxCacheUpdateTimeout;
+    private final RefreshLatencyTracker refreshLatencies = new RefreshLatencyTracker(TIMEOUT_PERCENTILE);
+    /**
+     * Mount table changes pushed to routers incrementally, null for full refreshes.
+     */
+    private MountTableLog mountTableLog;
+    /**
+     * Mount table version each router was last refreshed to. Managers are created
+     * per refresh, so they can't keep it.
+     */
+    private final Map<String, Long> routerVersions = new ConcurrentHashMap<>();
 
     /**
      * All router admin clients cached. So no need to create the client again and
@@ -45,11 +86,15 @@ public class MountTableRefresherService {
     private ScheduledExecutorService clientCacheCleanerScheduler;
 
     public void serviceInit() {
-        long routerClientMaxLiveTime = 15L;
+        long routerClientMaxLiveTime = TimeUnit.MINUTES.toMillis(5);
         this.cacheUpdateTimeout = 10L;
-        routerClientsCache = new Others.LoadingCache<String, Others.RouterClient>();
+        // below the old fixed timeout scheduling jitter alone would fail fast routers
+        setCacheUpdateTimeoutBounds(cacheUpdateTimeout, 100L);
+        this.mountTableLog = new MountTableLog(MOUNT_TABLE_RETAINED_CHANGES);
+        routerClientsCache = new Others.LoadingCache<>(addr -> new Others.RouterClient(),
+                routerClientMaxLiveTime, 0, TimeUnit.MILLISECONDS, ROUTER_CLIENTS_CACHE_MAX_SIZE);
         routerStore.getCachedRecords().stream().map(Others.RouterState::getAdminAddress)
-                .forEach(addr -> routerClientsCache.add(addr, new Others.RouterClient()));
+                .forEach(routerClientsCache::get);
 
         initClientCacheCleaner(routerClientMaxLiveTime);
     }
@@ -57,7 +102,7 @@ public class MountTableRefresherService {
     public void serviceStop() {
         clientCacheCleanerScheduler.shutdown();
         // remove and close all admin clients
-        routerClientsCache.cleanUp();
+        routerClientsCache.invalidateAll();
     }
 
     private void initClientCacheCleaner(long routerClientMaxLiveTime) {
@@ -71,8 +116,8 @@ public class MountTableRefresherService {
         clientCacheCleanerScheduler =
                 Executors.newSingleThreadScheduledExecutor(tf);
         /*
-         * When cleanUp() method is called, expired RouterClient will be removed and
-         * closed.
+         * Reads and writes already evict expired RouterClient incrementally, cleanUp()
+         * only catches the ones left behind while the cache is idle.
          */
         clientCacheCleanerScheduler.scheduleWithFixedDelay(
                 () -> routerClientsCache.cleanUp(), routerClientMaxLiveTime,
@@ -83,25 +128,87 @@ public class MountTableRefresherService {
      * Refresh mount table cache of this router as well as all other routers.
      */
     public void refresh() {
-        if (!cacheUpdateInProgressIndicator.tryLock()) {
-            return;
-        }
+        refreshAsync().join();
+    }
+
+    /**
+     * Requests a refresh round that starts after this call. Concurrent requests are
+     * coalesced into a single round, the calling thread doesn't wait for the routers.
+     *
+     * @return future of the report of that round
+     */
+    public CompletableFuture<RefreshReport> refreshAsync() {
+        refreshRoundsLock.lock();
         try {
-            List<MountTableRefresher> refreshers = routerStore.getCachedRecords().stream()
-                    .map(Others.RouterState::getAdminAddress)
-                    .filter(StringUtils::hasText)
-                    .map(this::getRefresher)
-                    .collect(Collectors.toUnmodifiableList());
-            if (!refreshers.isEmpty()) {
-                invokeRefresh(refreshers);
+            if (pendingRound == null) {
+                pendingRound = new RefreshRound(++refreshGeneration);
+                if (runningRound == null) {
+                    refreshCoordinator.execute(this::runPendingRound);
+                }
             }
+            return pendingRound.result;
+        } finally {
+            refreshRoundsLock.unlock();
+        }
+    }
+
+    /**
+     * @return generation of the last finished refresh round, 0 if there was none
+     */
+    public long getCompletedRefreshGeneration() {
+        return completedRefreshGeneration;
+    }
+
+    private void runPendingRound() {
+        RefreshRound round;
+        refreshRoundsLock.lock();
+        try {
+            round = pendingRound;
+            runningRound = round;
+            pendingRound = null;
         } finally {
-            cacheUpdateInProgressIndicator.unlock();
+            refreshRoundsLock.unlock();
+        }
+        CompletableFuture<RefreshReport> report;
+        try {
+            report = refreshRouters();
+        } catch (RuntimeException e) {
+            report = CompletableFuture.failedFuture(e);
+        }
+        report.whenComplete((result, e) -> {
+            if (e == null) {
+                completedRefreshGeneration = round.generation;
+                round.result.complete(result);
+            } else {
+                round.result.completeExceptionally(e);
+            }
+            refreshRoundsLock.lock();
+            try {
+                runningRound = null;
+                if (pendingRound != null) {
+                    refreshCoordinator.execute(this::runPendingRound);
+                }
+            } finally {
+                refreshRoundsLock.unlock();
+            }
+        });
+    }
+
+    private CompletableFuture<RefreshReport> refreshRouters() {
+        List<MountTableRefresher> refreshers = routerStore.getCachedRecords().stream()
+                .map(Others.RouterState::getAdminAddress)
+                .filter(StringUtils::hasText)
+                .map(this::getRefresher)
+                .collect(Collectors.toUnmodifiableList());
+        if (refreshers.isEmpty()) {
+            return CompletableFuture.completedFuture(new RefreshReport(List.of()));
         }
+        return invokeRefresh(refreshers);
     }
 
     protected MountTableRefresher getRefresher(String adminAddress) {
-        return new MountTableRefresher(getManager(adminAddress), adminAddress);
+        return new MountTableRefresher(getManager(adminAddress), adminAddress, mountTableLog,
+                getRouterVersion(adminAddress));
     }
 
     protected Others.MountTableManager getManager(String adminAddress) {
@@ -115,22 +222,54 @@ public class MountTableRefresherService {
         routerClientsCache.invalidate(adminAddress);
     }
 
-    protected void invokeRefresh(List<MountTableRefresher> refreshers) {
+    protected CompletableFuture<RefreshReport> invokeRefresh(List<MountTableRefresher> refreshers) {
+        List<CompletableFuture<RefreshReport.RouterResult>> results = refreshers.stream()
+                .map(this::refreshRouter)
+                .collect(Collectors.toUnmodifiableList());
+        return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> {
+                    RefreshReport report = new RefreshReport(results.stream()
+                            .map(CompletableFuture::join)
+                            .collect(Collectors.toUnmodifiableList()));
+                    logResult(report);
+                    return report;
+                });
+    }
+
+    private CompletableFuture<RefreshReport.RouterResult> refreshRouter(MountTableRefresher refresher) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> future;
         try {
-            CompletableFuture.allOf(refreshers.stream()
-                            .map(this::refresherToFuture)
-                            .toArray(CompletableFuture[]::new))
-                    .get();
-        } catch (ExecutionException | InterruptedException e) {
-            logError(e);
+            future = refresherToFuture(refresher);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.handle((ignored, e) -> {
+            if (e == null && refresher.isSuccess()) {
+                routerVersions.merge(refresher.getAdminAddress(), refresher.getVersion(), Math::max);
+            }
+            return RefreshReport.RouterResult.of(refresher, System.nanoTime() - start, unwrap(e));
+        });
+    }
+
+    /**
+     * @return mount table version the router was last refreshed to, 0 if it wasn't
+     */
+    long getRouterVersion(String adminAddress) {
+        return routerVersions.getOrDefault(adminAddress, 0L);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
         }
-        logResult(refreshers);
+        return e;
     }
 
-    private void logError(Exception e) {
-        if (e.getCause() instanceof TimeoutException) {
+    private void logError(Throwable cause) {
+        if (cause instanceof TimeoutException) {
             log("Some cache updates timed out");
-        } else if (e.getCause() instanceof InterruptedException) {
+        } else if (cause instanceof InterruptedException) {
             log("Mount table cache refresher was interrupted.");
         } else {
             log("Some cache updates completed with error");
@@ -138,29 +277,52 @@ public class MountTableRefresherService {
     }
 
     protected CompletableFuture<Void> refresherToFuture(MountTableRefresher refresher) {
+        String adminAddress = refresher.getAdminAddress();
+        long timeout = getCacheUpdateTimeout(adminAddress);
+        long start = System.nanoTime();
         return CompletableFuture.runAsync(refresher::refresh, mountTableRefresherExecutor)
-                .orTimeout(cacheUpdateTimeout, TimeUnit.MILLISECONDS);
+                .orTimeout(timeout, TimeUnit.MILLISECONDS)
+                .whenComplete((result, e) -> {
+                    // a timed out refresh took at least the timeout, so the next one gets more time
+                    long latency = e instanceof TimeoutException
+                            ? TimeUnit.MILLISECONDS.toNanos(timeout)
+                            : System.nanoTime() - start;
+                    refreshLatencies.record(adminAddress, latency, TimeUnit.NANOSECONDS);
+                });
+    }
+
+    /**
+     * Timeout is the observed latency percentile of the router with some headroom,
+     * kept within the configured bounds.
+     */
+    long getCacheUpdateTimeout(String adminAddress) {
+        if (maxCacheUpdateTimeout == 0) {
+            return cacheUpdateTimeout;
+        }
+        double observed = refreshLatencies.getPercentileMillis(adminAddress);
+        long timeout = observed < 0 ? cacheUpdateTimeout : (long) Math.ceil(observed * TIMEOUT_HEADROOM);
+        return Math.max(minCacheUpdateTimeout, Math.min(maxCacheUpdateTimeout, timeout));
     }
 
     private boolean isLocalAdmin(String adminAddress) {
         return adminAddress.contains("local");
     }
 
-    private void logResult(List<MountTableRefresher> refreshers) {
-        int successCount = 0;
-        int failureCount = 0;
-        for (MountTableRefresher mountTableRefresher : refreshers) {
-            if (mountTableRefresher.isSuccess()) {
-                successCount++;
-            } else {
-                failureCount++;
+    private void logResult(RefreshReport report) {
+        report.getResults().stream()
+                .map(RefreshReport.RouterResult::getCause)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .ifPresent(this::logError);
+        for (RefreshReport.RouterResult result : report.getResults()) {
+            if (!result.isSuccess()) {
                 // remove RouterClient from cache so that new client is created
-                removeFromCache(mountTableRefresher.getAdminAddress());
+                removeFromCache(result.getAdminAddress());
             }
         }
         log(String.format(
                 "Mount table entries cache refresh successCount=%d,failureCount=%d",
-                successCount, failureCount));
+                report.getSuccessCount(), report.getFailureCount()));
     }
 
     public void log(String message) {
@@ -171,11 +333,41 @@ public class MountTableRefresherService {
         this.cacheUpdateTimeout = cacheUpdateTimeout;
     }
 
+    public void setCacheUpdateTimeoutBounds(long minCacheUpdateTimeout, long maxCacheUpdateTimeout) {
+        if (minCacheUpdateTimeout <= 0) {
+            throw new IllegalArgumentException("Min cache update timeout must be greater than 0");
+        }
+        if (maxCacheUpdateTimeout < minCacheUpdateTimeout) {
+            throw new IllegalArgumentException("Max cache update timeout can't be less than min timeout");
+        }
+        this.minCacheUpdateTimeout = minCacheUpdateTimeout;
+        this.maxCacheUpdateTimeout = maxCacheUpdateTimeout;
+    }
+
     public void setRouterClientsCache(Others.LoadingCache cache) {
         this.routerClientsCache = cache;
     }
 
+    public void setMountTableLog(MountTableLog mountTableLog) {
+        this.mountTableLog = mountTableLog;
+        // versions of the previous log mean nothing in the new one
+        routerVersions.clear();
+    }
+
+    public MountTableLog getMountTableLog() {
+        return mountTableLog;
+    }
+
     public void setRouterStore(Others.RouterStore routerStore) {
         this.routerStore = routerStore;
     }
-}
\ No newline at end of file
+
+    private static class RefreshRound {
+        private final long generation;
+        private final CompletableFuture<RefreshReport> result = new CompletableFuture<>();
+
+        private RefreshRound(long generation) {
+            this.generation = generation;
+        }
+    }
+}
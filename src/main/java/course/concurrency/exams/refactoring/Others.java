@@ -3,25 +3,204 @@ package course.concurrency.exams.refactoring;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 public class Others {
 
+    /**
+     * Loading cache with per-entry expiration and a size bound.
+     * Concurrent loads of the same key are de-duplicated: the first caller runs the loader,
+     * the others wait for its result. Eviction uses a CLOCK (second chance) queue and is
+     * amortised on the read and write paths, so no periodic full clear is needed.
+     */
     public static class LoadingCache<K, V> {
-        Map<K,V> map = new ConcurrentHashMap<>();
+        private static final int SWEEP_BUDGET = 16;
+        private static final int READS_PER_MAINTENANCE = 64;
+
+        private final Map<K, Node<K, V>> map = new ConcurrentHashMap<>();
+        private final Queue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger clockSize = new AtomicInteger();
+        private final AtomicInteger reads = new AtomicInteger();
+        private final ReentrantLock maintenanceLock = new ReentrantLock();
+
+        private final Function<? super K, ? extends V> loader;
+        private final long expireAfterAccessNanos;
+        private final long expireAfterWriteNanos;
+        private final int maximumSize;
+
+        public LoadingCache(Function<? super K, ? extends V> loader) {
+            this(loader, 0, 0, TimeUnit.NANOSECONDS, Integer.MAX_VALUE);
+        }
+
+        /**
+         * @param expireAfterAccess 0 disables access expiration
+         * @param expireAfterWrite 0 disables write expiration
+         */
+        public LoadingCache(Function<? super K, ? extends V> loader, long expireAfterAccess,
+                            long expireAfterWrite, TimeUnit unit, int maximumSize) {
+            if (expireAfterAccess < 0 || expireAfterWrite < 0) {
+                throw new IllegalArgumentException("Expiration can't be negative");
+            }
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("Maximum size must be greater than 0");
+            }
+            this.loader = Objects.requireNonNull(loader);
+            this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+            this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+            this.maximumSize = maximumSize;
+        }
+
+        public V get(K key) {
+            for (;;) {
+                long now = System.nanoTime();
+                Node<K, V> node = map.get(key);
+                if (node != null) {
+                    if (!isExpired(node, now)) {
+                        node.accessTime = now;
+                        node.referenced = true;
+                        if ((reads.incrementAndGet() & (READS_PER_MAINTENANCE - 1)) == 0) {
+                            maintain(now);
+                        }
+                        return node.await();
+                    }
+                    map.remove(key, node);
+                    continue;
+                }
+                Node<K, V> loading = new Node<>(key, now);
+                if (map.putIfAbsent(key, loading) != null) {
+                    continue;
+                }
+                return load(loading);
+            }
+        }
 
         public void add(K key, V value) {
-            map.put(key, value);
+            Node<K, V> node = new Node<>(key, System.nanoTime());
+            node.value.complete(value);
+            map.put(key, node);
+            afterWrite(node);
         }
 
         public void invalidate(String address) {
             map.remove(address);
         }
 
-        public void cleanUp() { map.clear(); }
+        public void invalidateAll() {
+            map.clear();
+        }
+
+        public int size() {
+            return map.size();
+        }
+
+        /**
+         * Removes expired entries. Regular reads and writes already do this incrementally,
+         * calling it is only useful when the cache stays idle.
+         */
+        public void cleanUp() {
+            long now = System.nanoTime();
+            map.values().removeIf(node -> isExpired(node, now));
+            maintain(now);
+        }
+
+        private V load(Node<K, V> node) {
+            V value;
+            try {
+                value = loader.apply(node.key);
+            } catch (RuntimeException e) {
+                map.remove(node.key, node);
+                node.value.completeExceptionally(e);
+                throw e;
+            }
+            long now = System.nanoTime();
+            node.writeTime = now;
+            node.accessTime = now;
+            node.value.complete(value);
+            afterWrite(node);
+            return value;
+        }
 
+        private void afterWrite(Node<K, V> node) {
+            clock.offer(node);
+            clockSize.incrementAndGet();
+            maintain(System.nanoTime());
+        }
+
+        /**
+         * Advances the clock hand: drops invalidated and expired nodes, gives referenced
+         * nodes a second chance and evicts unreferenced ones while the cache is over its size.
+         */
+        private void maintain(long now) {
+            if (!maintenanceLock.tryLock()) {
+                return;
+            }
+            try {
+                int budget = Math.min(SWEEP_BUDGET, clockSize.get());
+                while (budget-- > 0 || map.size() > maximumSize) {
+                    Node<K, V> node = clock.poll();
+                    if (node == null) {
+                        break;
+                    }
+                    clockSize.decrementAndGet();
+                    if (map.get(node.key) != node) {
+                        continue;
+                    }
+                    if (isExpired(node, now)
+                            || (!node.referenced && map.size() > maximumSize)) {
+                        map.remove(node.key, node);
+                        continue;
+                    }
+                    node.referenced = false;
+                    clock.offer(node);
+                    clockSize.incrementAndGet();
+                }
+            } finally {
+                maintenanceLock.unlock();
+            }
+        }
+
+        private boolean isExpired(Node<K, V> node, long now) {
+            if (!node.value.isDone()) {
+                return false;
+            }
+            return (expireAfterWriteNanos > 0 && now - node.writeTime >= expireAfterWriteNanos)
+                    || (expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos);
+        }
+
+        private static class Node<K, V> {
+            private final K key;
+            private final CompletableFuture<V> value = new CompletableFuture<>();
+            private volatile long writeTime;
+            private volatile long accessTime;
+            private volatile boolean referenced;
+
+            private Node(K key, long now) {
+                this.key = key;
+                this.writeTime = now;
+                this.accessTime = now;
+            }
+
+            private V await() {
+                try {
+                    return value.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
     }
 
     public static class RouterClient {
@@ -52,6 +231,8 @@ public class Others {
     public static class MountTableManager {
 
         private String address;
+        private volatile long version;
+
         public MountTableManager(String address) {
             this.address = address;
         }
@@ -59,5 +240,20 @@ public class Others {
         public boolean refresh() {
             return ThreadLocalRandom.current().nextBoolean();
         }
+
+        /**
+         * @return mount table version the router holds
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean applyChanges(List<MountTableLog.Change> changes) {
+            if (!ThreadLocalRandom.current().nextBoolean()) {
+                return false;
+            }
+            version = changes.get(changes.size() - 1).getVersion();
+            return true;
+        }
     }
 }
@@ -0,0 +1,89 @@
+package course.concurrency.exams.refactoring;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per router estimate of a refresh latency percentile. Every router has a small log-scale
+ * histogram where older samples decay exponentially, so the estimate follows the router
+ * when its latency changes.
+ */
+public class RefreshLatencyTracker {
+
+    private final Map<String, DecayingHistogram> histograms = new ConcurrentHashMap<>();
+    private final double percentile;
+
+    public RefreshLatencyTracker(double percentile) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile must be in (0, 1]");
+        }
+        this.percentile = percentile;
+    }
+
+    public void record(String adminAddress, long latency, TimeUnit unit) {
+        histograms.computeIfAbsent(adminAddress, address -> new DecayingHistogram())
+                .record(unit.toNanos(latency) / 1_000_000d);
+    }
+
+    /**
+     * @return latency percentile in milliseconds or -1 if the router has no samples yet
+     */
+    public double getPercentileMillis(String adminAddress) {
+        DecayingHistogram histogram = histograms.get(adminAddress);
+        return histogram == null ? -1 : histogram.percentile(percentile);
+    }
+
+    /**
+     * Bucket i holds latencies up to MIN_MILLIS * 2^(i/2). Instead of decaying existing
+     * weights on every sample the weight of new samples grows, weights are rescaled
+     * only when it gets too large.
+     */
+    private static class DecayingHistogram {
+        private static final int BUCKETS = 48;
+        private static final double MIN_MILLIS = 0.01;
+        private static final double DECAY = 0.95;
+        private static final double RESCALE_THRESHOLD = 1e100;
+
+        private final double[] weights = new double[BUCKETS];
+        private double total;
+        private double increment = 1;
+
+        synchronized void record(double millis) {
+            increment /= DECAY;
+            if (increment > RESCALE_THRESHOLD) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    weights[i] /= increment;
+                }
+                total /= increment;
+                increment = 1;
+            }
+            weights[bucket(millis)] += increment;
+            total += increment;
+        }
+
+        synchronized double percentile(double percentile) {
+            double target = total * percentile;
+            double cumulative = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                cumulative += weights[i];
+                if (cumulative >= target) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(BUCKETS - 1);
+        }
+
+        private static int bucket(double millis) {
+            if (millis <= MIN_MILLIS) {
+                return 0;
+            }
+            int bucket = (int) Math.ceil(2 * Math.log(millis / MIN_MILLIS) / Math.log(2));
+            return Math.min(bucket, BUCKETS - 1);
+        }
+
+        private static double upperBound(int bucket) {
+            return MIN_MILLIS * Math.pow(2, bucket / 2d);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package course.concurrency.exams.refactoring;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of one refresh round: outcome, latency and failure cause of every router.
+ */
+public class RefreshReport {
+
+    public enum Outcome {
+        SUCCESS,
+        /**
+         * Router was reached but didn't refresh its cache.
+         */
+        FAILURE,
+        TIMEOUT,
+        ERROR
+    }
+
+    private final List<RouterResult> results;
+
+    public RefreshReport(List<RouterResult> results) {
+        this.results = List.copyOf(results);
+    }
+
+    public List<RouterResult> getResults() {
+        return results;
+    }
+
+    public int getSuccessCount() {
+        return (int) results.stream().filter(RouterResult::isSuccess).count();
+    }
+
+    public int getFailureCount() {
+        return results.size() - getSuccessCount();
+    }
+
+    @Override
+    public String toString() {
+        return "RefreshReport [successCount=" + getSuccessCount() + ", failureCount=" + getFailureCount()
+                + ", results=" + results + "]";
+    }
+
+    public static class RouterResult {
+        private final String adminAddress;
+        private final Outcome outcome;
+        private final long latencyNanos;
+        private final Throwable cause;
+
+        public RouterResult(String adminAddress, Outcome outcome, long latencyNanos, Throwable cause) {
+            this.adminAddress = adminAddress;
+            this.outcome = outcome;
+            this.latencyNanos = latencyNanos;
+            this.cause = cause;
+        }
+
+        static RouterResult of(MountTableRefresher refresher, long latencyNanos, Throwable cause) {
+            Outcome outcome;
+            if (cause instanceof TimeoutException) {
+                outcome = Outcome.TIMEOUT;
+            } else if (cause != null) {
+                outcome = Outcome.ERROR;
+            } else {
+                outcome = refresher.isSuccess() ? Outcome.SUCCESS : Outcome.FAILURE;
+            }
+            return new RouterResult(refresher.getAdminAddress(), outcome, latencyNanos, cause);
+        }
+
+        public String getAdminAddress() {
+            return adminAddress;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public boolean isSuccess() {
+            return outcome == Outcome.SUCCESS;
+        }
+
+        public long getLatency(TimeUnit unit) {
+            return unit.convert(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return exception of a timed out or failed refresh, null otherwise
+         */
+        public Throwable getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return "RouterResult [adminAddress=" + adminAddress + ", outcome=" + outcome
+                    + ", latencyMicros=" + TimeUnit.NANOSECONDS.toMicros(latencyNanos) + "]";
+        }
+    }
+}
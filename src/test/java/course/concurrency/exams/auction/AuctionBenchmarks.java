@@ -0,0 +1,176 @@
+package course.concurrency.exams.auction;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput, sample-time latency and (with the gc profiler) allocation rate
+ * of every Auction implementation. Thread count is not a JMH param, so main()
+ * runs the whole suite once per thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AuctionBenchmarks {
+
+    private static final int NOTIFIER_CPU_TOKENS = 200;
+    private static final long LOSING_SPREAD = 1_000;
+    // the single scheduler thread completes under a million sends per second, so faster winning bids
+    // are rejected at any limit; the limit only bounds the memory of the scheduled sends
+    private static final long SCHEDULED_LATENCY_MILLIS = 1;
+    private static final int SCHEDULED_MAX_IN_FLIGHT = 1 << 20;
+
+    @Param({"optimistic", "pessimistic", "stoppableOptimistic", "stoppablePessimistic",
+            "flatCombining", "primitive", "secondPrice"})
+    private String implementation;
+
+    // monotonic: every bid is higher than the previous one,
+    // random: rising prices with jitter, about half of the bids lose,
+    // mostlyLosing: 99% of the bids are below the latest price
+    @Param({"monotonic", "random", "mostlyLosing"})
+    private String prices;
+
+    // silent: does nothing, cpu: burns some CPU on the caller thread,
+    // scheduled: ScheduledNotifier, its rejected sends are printed after every iteration
+    @Param({"silent", "cpu", "scheduled"})
+    private String notifierCost;
+
+    private Notifier notifier;
+    private Auction auction;
+    private long iterationStart;
+    private long rejectedBefore;
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(AuctionBenchmarks.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .forks(1)
+                    .build();
+
+            new Runner(options).run();
+        }
+    }
+
+    @Setup
+    public void setup() {
+        notifier = createNotifier();
+    }
+
+    // every iteration bids on a fresh auction with prices counted from its start
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        auction = createAuction();
+        iterationStart = System.nanoTime();
+        if (notifier instanceof ScheduledNotifier) {
+            rejectedBefore = ((ScheduledNotifier) notifier).getRejectedCount();
+        }
+    }
+
+    // rejected sends are cheaper than scheduled ones, so a high count means the iteration measured the rejection path
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        if (notifier instanceof ScheduledNotifier) {
+            long rejected = ((ScheduledNotifier) notifier).getRejectedCount() - rejectedBefore;
+            System.out.println("ScheduledNotifier rejected " + rejected + " sends");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        notifier.shutdown();
+    }
+
+    @Benchmark
+    public boolean propose() {
+        long price = nextPrice();
+        if (auction instanceof AuctionPrimitive) {
+            return ((AuctionPrimitive) auction).propose(price, price, price);
+        }
+        return auction.propose(new Bid(price, price, price));
+    }
+
+    private long nextPrice() {
+        // nanoTime is monotonic across threads and doesn't add a shared counter to the measurement.
+        // Rebased on the iteration start it stays within 31 bits for AuctionPrimitive for about 2 seconds,
+        // longer iterations fail in AuctionPrimitive's range check instead of measuring only losing bids
+        long now = System.nanoTime() - iterationStart;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (prices) {
+            case "monotonic":
+                return now;
+            case "random":
+                return now + random.nextLong(-LOSING_SPREAD, LOSING_SPREAD);
+            case "mostlyLosing":
+                long latest = auction.getLatestBid().getPrice();
+                return random.nextInt(100) == 0 ? latest + 1 : latest - random.nextLong(1, LOSING_SPREAD);
+            default:
+                throw new IllegalArgumentException("Unknown price distribution " + prices);
+        }
+    }
+
+    private Auction createAuction() {
+        switch (implementation) {
+            case "optimistic":
+                return new AuctionOptimistic(notifier);
+            case "pessimistic":
+                return new AuctionPessimistic(notifier);
+            case "stoppableOptimistic":
+                return new AuctionStoppableOptimistic(notifier);
+            case "stoppablePessimistic":
+                return new AuctionStoppablePessimistic(notifier);
+            case "flatCombining":
+                return new AuctionFlatCombining(notifier);
+            case "primitive":
+                return new AuctionPrimitive(notifier);
+            case "secondPrice":
+                return new AuctionStoppableSecondPrice(notifier);
+            default:
+                throw new IllegalArgumentException("Unknown implementation " + implementation);
+        }
+    }
+
+    private Notifier createNotifier() {
+        switch (notifierCost) {
+            case "silent":
+                return new SilentNotifier(0);
+            case "cpu":
+                return new SilentNotifier(NOTIFIER_CPU_TOKENS);
+            case "scheduled":
+                return new ScheduledNotifier(SCHEDULED_LATENCY_MILLIS, SCHEDULED_MAX_IN_FLIGHT);
+            default:
+                throw new IllegalArgumentException("Unknown notifier " + notifierCost);
+        }
+    }
+
+    static class SilentNotifier extends Notifier {
+        private final int tokens;
+
+        SilentNotifier(int tokens) {
+            super(Executors.newSingleThreadExecutor());
+            this.tokens = tokens;
+        }
+
+        @Override
+        public void sendOutdatedMessage(Bid bid) {
+            Blackhole.consumeCPU(tokens);
+        }
+
+        @Override
+        public void sendOutdatedMessage(long bidId, long participantId, long price) {
+            Blackhole.consumeCPU(tokens);
+        }
+    }
+}
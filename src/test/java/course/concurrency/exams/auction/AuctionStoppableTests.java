@@ -1,11 +1,20 @@
 package course.concurrency.exams.auction;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class AuctionStoppableTests {
 
@@ -23,7 +32,7 @@ public class AuctionStoppableTests {
 
     @BeforeEach
     public void setup() {
-        notifier = new Notifier();
+        notifier = new ScheduledNotifier();
 
         executor = Executors.newFixedThreadPool(poolSize);
         priceQueue = new ArrayBlockingQueue<>(bidCount);
@@ -57,6 +66,30 @@ public class AuctionStoppableTests {
         testCorrectLatestBid(optimistic, "optimistic");
     }
 
+    @RepeatedTest(TEST_COUNT)
+    public void testRegistry() throws InterruptedException {
+        AuctionStoppable lot = new AuctionRegistry(notifier).getAuction(42L);
+        testCorrectLatestBid(lot, "registry");
+    }
+
+    @RepeatedTest(TEST_COUNT)
+    public void testOptimisticSpinBackoff() throws InterruptedException {
+        AuctionStoppable optimistic = new AuctionStoppableOptimistic(notifier, Backoff.spin(64));
+        testCorrectLatestBid(optimistic, "optimistic spin backoff");
+    }
+
+    @RepeatedTest(TEST_COUNT)
+    public void testSecondPrice() throws InterruptedException {
+        AuctionStoppable secondPrice = new AuctionStoppableSecondPrice(notifier);
+        testCorrectLatestBid(secondPrice, "second price");
+    }
+
+    @RepeatedTest(TEST_COUNT)
+    public void testOffHeapStore() throws InterruptedException {
+        AuctionStoppable lot = new OffHeapAuctionStore(notifier, 1_000).getAuction(42L);
+        testCorrectLatestBid(lot, "off-heap store");
+    }
+
     public void testCorrectLatestBid(AuctionStoppable auction, String tag) throws InterruptedException {
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -96,6 +129,344 @@ public class AuctionStoppableTests {
         testStoppedAuction(auction);
     }
 
+    @Test
+    public void testStoppedAuctionRegistry() throws InterruptedException {
+        AuctionStoppable auction = new AuctionRegistry(notifier).getAuction(42L);
+        testStoppedAuction(auction);
+    }
+
+    @Test
+    public void testStoppedAuctionSecondPrice() throws InterruptedException {
+        AuctionStoppable auction = new AuctionStoppableSecondPrice(notifier);
+        testStoppedAuction(auction);
+    }
+
+    @Test
+    public void testSecondPriceClearsAtSecondHighestBid() {
+        AuctionStoppableSecondPrice auction = new AuctionStoppableSecondPrice(notifier, 3L);
+
+        assertFalse(auction.propose(new Bid(1L, 1L, 2L)));
+        assertTrue(auction.propose(new Bid(2L, 2L, 10L)));
+        assertFalse(auction.propose(new Bid(3L, 3L, 7L)));
+        assertFalse(auction.propose(new Bid(4L, 4L, 5L)));
+
+        ClearedBid result = auction.stopAuction();
+        assertEquals(2L, result.getId());
+        assertEquals(7L, result.getClearingPrice());
+        assertTrue(result.hasSecondBid());
+        assertFalse(auction.propose(new Bid(5L, 5L, 20L)));
+
+        AuctionStoppableSecondPrice single = new AuctionStoppableSecondPrice(notifier, 3L);
+        single.propose(new Bid(6L, 6L, 10L));
+        assertEquals(3L, single.stopAuction().getClearingPrice());
+    }
+
+    @Test
+    public void testSecondPriceWithoutSecondBid() {
+        AuctionStoppableSecondPrice single = new AuctionStoppableSecondPrice(notifier);
+        assertTrue(single.propose(new Bid(1L, 1L, 10L)));
+        ClearedBid alone = single.stopAuction();
+        assertEquals(10L, alone.getPrice());
+        assertEquals(0L, alone.getClearingPrice());
+        assertFalse(alone.hasSecondBid());
+
+        AuctionStoppableSecondPrice paired = new AuctionStoppableSecondPrice(notifier);
+        assertTrue(paired.propose(new Bid(1L, 1L, 0L)));
+        assertTrue(paired.propose(new Bid(2L, 2L, 10L)));
+        ClearedBid atZero = paired.stopAuction();
+        assertEquals(0L, atZero.getClearingPrice());
+        assertTrue(atZero.hasSecondBid());
+
+        ClearedBid empty = new AuctionStoppableSecondPrice(notifier).stopAuction();
+        assertEquals(-1L, empty.getPrice());
+        assertEquals(-1L, empty.getClearingPrice());
+        assertFalse(empty.hasSecondBid());
+    }
+
+    @Test
+    public void testDeadlineClosesAuction() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 8);
+        try {
+            AuctionWithDeadline auction = new AuctionWithDeadline(new AuctionStoppableOptimistic(notifier), wheel, 100);
+            assertTrue(auction.propose(new Bid(1L, 1L, 10L)));
+
+            Thread.sleep(300);
+            assertTrue(auction.isClosed());
+            assertFalse(auction.propose(new Bid(2L, 2L, 20L)));
+            assertEquals(10L, auction.stopAuction().getPrice());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void testTimingWheelSurvivesFailingTask() throws InterruptedException {
+        List<String> logged = new CopyOnWriteArrayList<>();
+        TimingWheel wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 8) {
+            @Override
+            protected void log(String message) {
+                logged.add(message);
+            }
+        };
+        try {
+            CountDownLatch expired = new CountDownLatch(1);
+            wheel.schedule(() -> {
+                throw new IllegalStateException("failed");
+            }, 10, TimeUnit.MILLISECONDS);
+            wheel.schedule(expired::countDown, 20, TimeUnit.MILLISECONDS);
+
+            assertTrue(expired.await(1, TimeUnit.SECONDS));
+            assertEquals(1, wheel.getFailedTaskCount());
+            assertEquals(1, logged.size());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void testLateBidExtendsDeadline() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 8);
+        try {
+            AuctionWithDeadline auction = new AuctionWithDeadline(new AuctionStoppableOptimistic(notifier), wheel,
+                    200, 150, 500);
+            Thread.sleep(100);
+            assertTrue(auction.propose(new Bid(1L, 1L, 10L)));
+
+            Thread.sleep(250);
+            assertFalse(auction.isClosed());
+            assertTrue(auction.propose(new Bid(2L, 2L, 20L)));
+
+            Thread.sleep(700);
+            assertTrue(auction.isClosed());
+            assertEquals(20L, auction.getLatestBid().getPrice());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void testJournalRecoversStoppedAuction(@TempDir Path dir) throws InterruptedException {
+        Path file = dir.resolve("bids.journal");
+        int threads = 4;
+        int bidsPerThread = 10_000;
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        try (BidJournal journal = new BidJournal(file, threads * bidsPerThread + 1, 5)) {
+            AuctionStoppable auction = new AuctionWithJournal(new AuctionStoppableOptimistic(notifier), journal);
+            for (int t = 0; t < threads; t++) {
+                long first = t;
+                writers.submit(() -> {
+                    for (long price = first; price < threads * bidsPerThread; price += threads) {
+                        auction.propose(new Bid(price, first, price));
+                    }
+                });
+            }
+            writers.shutdown();
+            writers.awaitTermination(10, TimeUnit.SECONDS);
+            auction.stopAuction();
+        }
+
+        try (BidJournal journal = new BidJournal(file, threads * bidsPerThread + 1, 5)) {
+            AuctionStoppable recovered = new AuctionWithJournal(new AuctionStoppableOptimistic(new ScheduledNotifier()), journal);
+            assertEquals(threads * bidsPerThread - 1, recovered.getLatestBid().getPrice());
+            assertEquals((threads * bidsPerThread - 1) % threads, recovered.getLatestBid().getParticipantId());
+            assertFalse(recovered.propose(new Bid(-2L, 0L, Long.MAX_VALUE)));
+        }
+    }
+
+    @Test
+    public void testFullJournalRejectsBidBeforeApplyingIt(@TempDir Path dir) {
+        Path file = dir.resolve("bids.journal");
+        try (BidJournal journal = new BidJournal(file, 3, 5)) {
+            AuctionStoppable auction = new AuctionWithJournal(new AuctionStoppableOptimistic(notifier), journal);
+            assertTrue(auction.propose(new Bid(1L, 1L, 10L)));
+            assertFalse(auction.propose(new Bid(2L, 2L, 5L)));
+            assertTrue(auction.propose(new Bid(3L, 3L, 20L)));
+
+            assertThrows(IllegalStateException.class, () -> auction.propose(new Bid(4L, 4L, 30L)));
+            assertEquals(20L, auction.getLatestBid().getPrice());
+            assertEquals(20L, auction.stopAuction().getPrice());
+        }
+
+        try (BidJournal journal = new BidJournal(file, 3, 5)) {
+            assertTrue(journal.isRecoveredStopped());
+            assertEquals(3L, journal.getRecoveredBid().getId());
+        }
+    }
+
+    @Test
+    public void testJournalReusesReleasedSlots(@TempDir Path dir) {
+        Path file = dir.resolve("bids.journal");
+        try (BidJournal journal = new BidJournal(file, 3, 5)) {
+            long lost = journal.reserve();
+            journal.release(lost);
+            long slot = journal.reserve();
+            journal.write(slot, new Bid(1L, 1L, 10L));
+
+            assertEquals(lost, slot);
+            assertEquals(1L, journal.size());
+        }
+
+        try (BidJournal journal = new BidJournal(file, 3, 5)) {
+            assertEquals(10L, journal.getRecoveredBid().getPrice());
+        }
+    }
+
+    @Test
+    public void testSlowSubscriberGetsConflatedBids() throws InterruptedException {
+        AuctionWithPublisher auction = new AuctionWithPublisher(new AuctionStoppableOptimistic(notifier));
+        List<Long> received = new CopyOnWriteArrayList<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        auction.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            public void onNext(Bid bid) {
+                received.add(bid.getPrice());
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ignored) {}
+                subscription.request(1);
+            }
+
+            public void onError(Throwable throwable) {
+            }
+
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+
+        for (long price = 0; price < 100_000; price++) {
+            auction.propose(new Bid(price, price, price));
+        }
+        auction.stopAuction();
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertTrue(received.size() < 100_000);
+        assertEquals(99_999L, received.get(received.size() - 1));
+        for (int i = 1; i < received.size() - 1; i++) {
+            assertTrue(received.get(i) > received.get(i - 1));
+        }
+    }
+
+    @Test
+    public void testOptimisticStopIsFinal() {
+        AuctionStoppable auction = new AuctionStoppableOptimistic(notifier);
+        auction.propose(new Bid(1L, 1L, 10L));
+
+        assertEquals(1L, auction.stopAuction().getId());
+        assertFalse(auction.propose(new Bid(2L, 2L, 20L)));
+        assertEquals(10L, auction.stopAuction().getPrice());
+        assertEquals(10L, auction.getLatestBid().getPrice());
+    }
+
+    @Test
+    public void testStoppedAuctionOffHeapStore() throws InterruptedException {
+        AuctionStoppable auction = new OffHeapAuctionStore(notifier, 1_000).getAuction(42L);
+        testStoppedAuction(auction);
+    }
+
+    @Test
+    public void testSharedMemoryAuctionSeenThroughTwoMappings(@TempDir Path dir) throws InterruptedException {
+        Path file = dir.resolve("auction.shared");
+        // far fewer records than proposals: losing and replaced bids must give theirs back
+        AuctionSharedMemory first = new AuctionSharedMemory(notifier, file, 8);
+        AuctionSharedMemory second = new AuctionSharedMemory(notifier, file, 8);
+
+        ExecutorService bidders = Executors.newFixedThreadPool(4);
+        for (AuctionSharedMemory auction : List.of(first, second, first, second)) {
+            bidders.submit(() -> {
+                for (long price = 0; price < 100_000; price++) {
+                    auction.propose(price, price % 7, price);
+                }
+            });
+        }
+        bidders.shutdown();
+        bidders.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(99_999L, first.getLatestBid().getPrice());
+        assertEquals(99_999L % 7, second.getLatestBid().getParticipantId());
+        second.stopAuction();
+        assertFalse(first.propose(new Bid(1L, 1L, 1_000_000L)));
+    }
+
+    @Test
+    public void testSharedMemoryAuctionStopShutsNotifierDown(@TempDir Path dir) {
+        AtomicBoolean shutDown = new AtomicBoolean();
+        Notifier stopping = new ScheduledNotifier() {
+            @Override
+            public void shutdown() {
+                shutDown.set(true);
+                super.shutdown();
+            }
+        };
+        AuctionSharedMemory auction = new AuctionSharedMemory(stopping, dir.resolve("auction.shared"));
+        assertTrue(auction.propose(new Bid(1L, 1L, 10L)));
+
+        assertEquals(10L, auction.stopAuction().getPrice());
+        assertTrue(shutDown.get());
+    }
+
+    @Test
+    public void testSharedMemoryAuctionSurvivesKilledProcess(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("auction.shared");
+        AuctionSharedMemory auction = new AuctionSharedMemory(notifier, file);
+
+        Process bidder = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), SharedMemoryBidder.class.getName(), file.toString())
+                .inheritIO()
+                .start();
+        try {
+            while (auction.getLatestBid().getPrice() < 1_000) {
+                assertTrue(bidder.isAlive(), "bidder process exited");
+                Thread.sleep(1);
+            }
+        } finally {
+            // dies at an arbitrary point of a proposal
+            bidder.destroyForcibly().waitFor();
+        }
+
+        Bid left = auction.getLatestBid();
+        assertEquals(left.getPrice() % 7, left.getParticipantId());
+        assertTrue(auction.propose(new Bid(-1L, 1L, left.getPrice() + 1)));
+        assertEquals(1L, auction.stopAuction().getParticipantId());
+        assertFalse(auction.propose(new Bid(-2L, 2L, left.getPrice() + 2)));
+    }
+
+    // bids on a shared auction file in ascending prices until it is killed
+    public static class SharedMemoryBidder {
+        public static void main(String[] args) {
+            AuctionSharedMemory auction = new AuctionSharedMemory(new ScheduledNotifier(), Path.of(args[0]));
+            for (long price = 0; ; price++) {
+                auction.propose(price, price % 7, price);
+                LockSupport.parkNanos(10_000);
+            }
+        }
+    }
+
+    @Test
+    public void testRegistryKeepsLotsApart() {
+        AuctionRegistry registry = new AuctionRegistry(notifier, 4);
+
+        assertTrue(registry.propose(1L, new Bid(1L, 1L, 10L)));
+        assertTrue(registry.propose(2L, new Bid(2L, 2L, 5L)));
+        assertFalse(registry.propose(1L, new Bid(3L, 3L, 7L)));
+        assertEquals(-1L, registry.getLatestBid(3L).getPrice());
+        assertFalse(registry.propose(3L, new Bid(6L, 6L, -1L)));
+        assertEquals(-1L, registry.getLatestBid(3L).getPrice());
+
+        Map<Long, Bid> stopped = registry.stopAll();
+        assertEquals(10L, stopped.get(1L).getPrice());
+        assertEquals(5L, stopped.get(2L).getPrice());
+        assertFalse(registry.propose(2L, new Bid(4L, 4L, 50L)));
+        assertTrue(registry.propose(3L, new Bid(5L, 5L, 1L)));
+        assertEquals(3, registry.size());
+    }
+
     public void testStoppedAuction(AuctionStoppable auction) throws InterruptedException {
         CountDownLatch latch = new CountDownLatch(1);
         int priceToStop = iterations;
@@ -2,9 +2,20 @@ package course.concurrency.exams.auction;
 
 import org.junit.jupiter.api.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class AuctionTests {
 
@@ -14,6 +25,7 @@ public class AuctionTests {
     private static final int iterations = 1_000_000;
     private static final int poolSize = Runtime.getRuntime().availableProcessors();
     private static final int bidCount = iterations * poolSize;
+    private static final int BATCH_SIZE = 8;
 
     private ExecutorService executor;
     private BlockingQueue<Long> priceQueue;
@@ -22,7 +34,7 @@ public class AuctionTests {
 
     @BeforeEach
     public void setup() {
-        notifier = new Notifier();
+        notifier = new ScheduledNotifier();
 
         executor = Executors.newFixedThreadPool(poolSize);
         priceQueue = new ArrayBlockingQueue<>(bidCount);
@@ -50,12 +62,270 @@ public class AuctionTests {
         testCorrectLatestBid(auction, "optimistic");
     }
 
+    @RepeatedTest(TEST_COUNT)
+    public void testOptimisticExponentialBackoff() throws InterruptedException {
+        Auction auction = new AuctionOptimistic(notifier, Backoff.exponential(4, 1024));
+        testCorrectLatestBid(auction, "optimistic exponential backoff");
+    }
+
+    @RepeatedTest(TEST_COUNT)
+    public void testOptimisticProportionalBackoff() throws InterruptedException {
+        Auction auction = new AuctionOptimistic(notifier, Backoff.proportional(16, 64));
+        testCorrectLatestBid(auction, "optimistic proportional backoff");
+    }
+
     @RepeatedTest(TEST_COUNT)
     public void testPessimistic() throws InterruptedException {
         Auction auction = new AuctionPessimistic(notifier);
         testCorrectLatestBid(auction, "pessimistic");
     }
 
+    @RepeatedTest(TEST_COUNT)
+    public void testFlatCombining() throws InterruptedException {
+        Auction auction = new AuctionFlatCombining(notifier);
+        testCorrectLatestBid(auction, "flat combining");
+    }
+
+    @RepeatedTest(TEST_COUNT)
+    public void testOptimisticCoalescing() throws InterruptedException {
+        notifier.shutdown();
+        notifier = new CoalescingNotifier();
+        Auction auction = new AuctionOptimistic(notifier);
+        testCorrectLatestBid(auction, "optimistic coalescing");
+    }
+
+    @RepeatedTest(TEST_COUNT)
+    public void testPrimitive() throws InterruptedException {
+        Auction auction = new AuctionPrimitive(notifier);
+        testCorrectLatestBid(auction, "primitive");
+    }
+
+    @Test
+    public void testFlatCombiningUnlinksSlotsOfIdleThreads() throws InterruptedException {
+        AuctionFlatCombining auction = new AuctionFlatCombining(notifier);
+        for (long price = 0; price < 100; price++) {
+            Bid bid = new Bid(price, price, price);
+            Thread thread = new Thread(() -> auction.propose(bid));
+            thread.start();
+            thread.join();
+        }
+        assertEquals(100, auction.getSlotCount());
+
+        for (long price = 100; price < 1_000; price++) {
+            auction.propose(new Bid(price, price, price));
+        }
+
+        // the head slot stays until a newer thread registers in front of it
+        assertTrue(auction.getSlotCount() <= 2);
+        assertEquals(999L, auction.getLatestBid().getPrice());
+    }
+
+    @Test
+    public void testPrimitiveKeepsWinnerFields() {
+        AuctionPrimitive auction = new AuctionPrimitive(notifier);
+
+        assertTrue(auction.propose(1L, 10L, 5L));
+        assertTrue(auction.propose(2L, 20L, 7L));
+        assertFalse(auction.propose(3L, 30L, 7L));
+
+        Bid latest = auction.getLatestBid();
+        assertEquals(2L, latest.getId());
+        assertEquals(20L, latest.getParticipantId());
+        assertEquals(7L, latest.getPrice());
+    }
+
+    @RepeatedTest(TEST_COUNT)
+    public void testOptimisticWithTopBids() throws InterruptedException {
+        AuctionWithTopBids auction = new AuctionWithTopBids(new AuctionStoppableOptimistic(notifier), 3);
+        testCorrectLatestBid(auction, "optimistic with top bids");
+
+        List<Long> topPrices = auction.getTopBids(5).stream().map(Bid::getPrice).collect(Collectors.toList());
+        assertEquals(List.of(expectedPrice, expectedPrice - 1, expectedPrice - 2), topPrices);
+    }
+
+    @Test
+    public void testTopBidsKeepLosingBids() {
+        AuctionWithTopBids auction = new AuctionWithTopBids(new AuctionStoppablePessimistic(notifier), 2);
+
+        assertTrue(auction.propose(new Bid(1L, 1L, 10L)));
+        assertFalse(auction.propose(new Bid(2L, 2L, 8L)));
+        assertFalse(auction.propose(new Bid(3L, 3L, 5L)));
+
+        assertEquals(10L, auction.getLatestBid().getPrice());
+        List<Bid> top = auction.getTopBids(2);
+        assertEquals(1L, top.get(0).getId());
+        assertEquals(2L, top.get(1).getId());
+        assertEquals(1, auction.getTopBids(1).size());
+        assertThrows(IllegalArgumentException.class, () -> auction.getTopBids(0));
+        assertThrows(IllegalArgumentException.class, () -> auction.getTopBids(-1));
+    }
+
+    @Test
+    public void testTraceReplayReproducesLots() {
+        AuctionRegistry recorded = new AuctionRegistry(notifier);
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        try (BidTraceRecorder recorder = new BidTraceRecorder(trace)) {
+            for (long lot = 0; lot < 8; lot++) {
+                Auction auction = recorder.record(recorded.getAuction(lot), lot);
+                for (long price = 0; price < 1_000; price++) {
+                    auction.propose(new Bid(price, lot, (price * 7 + lot) % 1_000));
+                }
+            }
+        }
+
+        BidTraceReplayer replayer = new BidTraceReplayer(new ByteArrayInputStream(trace.toByteArray()));
+        AuctionRegistry replayed = new AuctionRegistry(notifier);
+        BidTraceReplayer.Report report = replayer.replay(replayed::getAuction, 4, Double.POSITIVE_INFINITY);
+
+        assertEquals(8_000, report.getProposals());
+        assertEquals(8_000, report.getLatency().getCount());
+        for (long lot = 0; lot < 8; lot++) {
+            assertEquals(recorded.getLatestBid(lot).getPrice(), replayed.getLatestBid(lot).getPrice());
+            assertEquals(lot, replayed.getLatestBid(lot).getParticipantId());
+        }
+    }
+
+    @Test
+    public void testTraceIsWrittenInChunksWhileRecording() throws InterruptedException {
+        AuctionOptimistic recorded = new AuctionOptimistic(notifier);
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        int bids = BidTraceRecorder.CHUNK_RECORDS * 3;
+        try (BidTraceRecorder recorder = new BidTraceRecorder(trace)) {
+            Auction auction = recorder.record(recorded, 0L);
+            for (long price = 0; price < bids; price++) {
+                auction.propose(new Bid(price, price % 8, price));
+            }
+
+            // full chunks reach the output before close
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (new BidTraceReplayer(new ByteArrayInputStream(trace.toByteArray())).size() < bids) {
+                assertTrue(System.nanoTime() < deadline, "chunks were not written while recording");
+                Thread.sleep(1);
+            }
+
+            // a trace cut off in the middle of a chunk keeps the records before the cut
+            byte[] written = trace.toByteArray();
+            int kept = new BidTraceReplayer(new ByteArrayInputStream(written, 0, written.length - 3)).size();
+            assertTrue(kept >= bids - BidTraceRecorder.CHUNK_RECORDS && kept < bids);
+        }
+
+        BidTraceReplayer replayer = new BidTraceReplayer(new ByteArrayInputStream(trace.toByteArray()));
+        AuctionOptimistic replayed = new AuctionOptimistic(notifier);
+        assertEquals(bids, replayer.replay(replayed, 2, Double.POSITIVE_INFINITY).getProposals());
+        assertEquals(bids - 1, replayed.getLatestBid().getPrice());
+    }
+
+    @Test
+    public void testSingleLotTraceReplaysOnSeveralThreads() throws InterruptedException {
+        AuctionOptimistic recorded = new AuctionOptimistic(notifier);
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        int bids = 10_000;
+        int participants = 8;
+        try (BidTraceRecorder recorder = new BidTraceRecorder(trace)) {
+            Auction auction = recorder.record(recorded, 0L);
+            CountDownLatch latch = new CountDownLatch(1);
+            for (int i = 0; i < poolSize; i++) {
+                long first = i;
+                executor.submit(() -> {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException ignored) {}
+
+                    for (long price = first; price < bids; price += poolSize) {
+                        auction.propose(new Bid(price, price % participants, price));
+                    }
+                });
+            }
+            latch.countDown();
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            assertEquals(bids, recorder.getCount());
+        }
+
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AuctionOptimistic replayed = new AuctionOptimistic(notifier);
+        BidTraceReplayer replayer = new BidTraceReplayer(new ByteArrayInputStream(trace.toByteArray()));
+        BidTraceReplayer.Report report = replayer.replay(new Auction() {
+            public boolean propose(Bid bid) {
+                threads.add(Thread.currentThread().getName());
+                return replayed.propose(bid);
+            }
+
+            public Bid getLatestBid() {
+                return replayed.getLatestBid();
+            }
+        }, 4, Double.POSITIVE_INFINITY);
+
+        assertEquals(bids, report.getProposals());
+        assertEquals(4, threads.size());
+        assertEquals(bids - 1, replayed.getLatestBid().getPrice());
+        assertEquals((bids - 1) % participants, replayed.getLatestBid().getParticipantId());
+    }
+
+    @Test
+    public void testRetriedBidsReachAuctionOnce() throws InterruptedException {
+        ConcurrentHashMap<Long, AtomicInteger> proposals = new ConcurrentHashMap<>();
+        AuctionStoppable optimistic = new AuctionStoppableOptimistic(notifier);
+        AuctionWithDeduplication auction = new AuctionWithDeduplication(new AuctionStoppableDecorator(optimistic) {
+            public boolean propose(Bid bid) {
+                proposals.computeIfAbsent(bid.getId(), id -> new AtomicInteger()).incrementAndGet();
+                return optimistic.propose(bid);
+            }
+        }, 1 << 16);
+
+        int retries = 4;
+        CountDownLatch latch = new CountDownLatch(1);
+        for (int i = 0; i < poolSize; i++) {
+            executor.submit(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException ignored) {}
+
+                for (long id = 0; id < 10_000; id++) {
+                    for (int retry = 0; retry < retries; retry++) {
+                        auction.propose(new Bid(id, id, id));
+                    }
+                }
+            });
+        }
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(20, TimeUnit.SECONDS);
+
+        assertEquals(10_000, proposals.size());
+        assertTrue(proposals.values().stream().allMatch(count -> count.get() == 1));
+        assertEquals(10_000L * (retries * poolSize - 1), auction.getDuplicateCount());
+        assertTrue(auction.propose(new Bid(9_999L, 9_999L, 9_999L)));
+    }
+
+    @RepeatedTest(TEST_COUNT)
+    public void testOptimisticBatched() throws InterruptedException {
+        Auction auction = new AuctionOptimistic(notifier);
+        testCorrectLatestBidBatched(auction, "optimistic batched");
+    }
+
+    @RepeatedTest(TEST_COUNT)
+    public void testPessimisticBatched() throws InterruptedException {
+        Auction auction = new AuctionPessimistic(notifier);
+        testCorrectLatestBidBatched(auction, "pessimistic batched");
+    }
+
+    @Test
+    public void testProposeAllAcceptsOnlyBestBid() {
+        Auction auction = new AuctionOptimistic(notifier);
+        auction.propose(new Bid(0L, 0L, 5L));
+
+        boolean[] accepted = auction.proposeAll(List.of(
+                new Bid(1L, 1L, 4L),
+                new Bid(2L, 2L, 8L),
+                new Bid(3L, 3L, 6L),
+                new Bid(4L, 4L, 8L)));
+
+        assertArrayEquals(new boolean[]{false, true, false, false}, accepted);
+        assertEquals(2L, auction.getLatestBid().getId());
+        assertArrayEquals(new boolean[]{false}, auction.proposeAll(new Bid[]{new Bid(5L, 5L, 7L)}));
+    }
+
     public void testCorrectLatestBid(Auction auction, String tag) throws InterruptedException {
         CountDownLatch latch = new CountDownLatch(1);
         for (int i = 0; i < poolSize; i++) {
@@ -85,4 +355,35 @@ public class AuctionTests {
         assertEquals(expectedPrice, auction.getLatestBid().getPrice());
         stat.addData(tag,end - start);
     }
+
+    public void testCorrectLatestBidBatched(Auction auction, String tag) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        for (int i = 0; i < poolSize; i++) {
+
+            executor.submit(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException ignored) {}
+
+                List<Bid> batch = new ArrayList<>(BATCH_SIZE);
+                for (int it = 0; it < iterations; it += BATCH_SIZE) {
+                    batch.clear();
+                    Long value;
+                    while (batch.size() < BATCH_SIZE && (value = priceQueue.poll()) != null) {
+                        batch.add(new Bid(value, value, value));
+                    }
+                    auction.proposeAll(batch);
+                }
+            });
+        }
+
+        long start = System.currentTimeMillis();
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(20, TimeUnit.SECONDS);
+        long end = System.currentTimeMillis();
+
+        assertEquals(expectedPrice, auction.getLatestBid().getPrice());
+        stat.addData(tag,end - start);
+    }
 }
@@ -0,0 +1,125 @@
+package course.concurrency.exams.auction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BidIntakeServerTests {
+
+    private Notifier notifier;
+
+    @BeforeEach
+    public void setup() {
+        notifier = new ScheduledNotifier();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        notifier.shutdown();
+    }
+
+    @Test
+    public void testPipelinedBidsOverLoopback() throws IOException {
+        AuctionPrimitive auction = new AuctionPrimitive(notifier);
+        int bidCount = 100_000;
+        try (BidIntakeServer server = new BidIntakeServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), BidIntakeServer.forAuction(auction), 2);
+             SocketChannel client = SocketChannel.open(server.getAddress())) {
+
+            ByteBuffer requests = ByteBuffer.allocate(bidCount * BidIntakeServer.REQUEST_SIZE);
+            for (long i = 0; i < bidCount; i++) {
+                long price = i % 2 == 0 ? i : 0;
+                requests.putLong(7L).putLong(i).putLong(i % 10).putLong(price);
+            }
+            requests.flip();
+
+            ByteBuffer responses = ByteBuffer.allocate(bidCount * BidIntakeServer.RESPONSE_SIZE);
+            client.configureBlocking(false);
+            while (requests.hasRemaining() || responses.hasRemaining()) {
+                client.write(requests);
+                client.read(responses);
+            }
+            responses.flip();
+
+            int accepted = 0;
+            for (long i = 0; i < bidCount; i++) {
+                assertEquals(i, responses.getLong());
+                accepted += responses.getLong();
+            }
+            assertEquals(bidCount / 2, accepted);
+            assertEquals(bidCount - 2, auction.getLatestBid().getPrice());
+        }
+    }
+
+    @Test
+    public void testClientReadingOnlyAfterSendingEverything() throws Exception {
+        AuctionPrimitive auction = new AuctionPrimitive(notifier);
+        int bidCount = 200_000;
+        try (BidIntakeServer server = new BidIntakeServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), BidIntakeServer.forAuction(auction), 1);
+             SocketChannel client = SocketChannel.open(server.getAddress())) {
+
+            ByteBuffer requests = ByteBuffer.allocate(bidCount * BidIntakeServer.REQUEST_SIZE);
+            for (long i = 0; i < bidCount; i++) {
+                requests.putLong(7L).putLong(i).putLong(i % 10).putLong(i);
+            }
+            requests.flip();
+            // responses fill the server's output before the client starts reading them
+            CompletableFuture<Void> sent = CompletableFuture.runAsync(() -> {
+                try {
+                    while (requests.hasRemaining()) {
+                        client.write(requests);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Thread.sleep(200);
+
+            ByteBuffer responses = ByteBuffer.allocate(bidCount * BidIntakeServer.RESPONSE_SIZE);
+            client.socket().setSoTimeout(5_000);
+            ReadableByteChannel in = Channels.newChannel(client.socket().getInputStream());
+            while (responses.hasRemaining()) {
+                in.read(responses);
+            }
+            sent.join();
+            responses.flip();
+            assertEquals(bidCount - 1, responses.getLong((bidCount - 1) * BidIntakeServer.RESPONSE_SIZE));
+            assertEquals(bidCount - 1, auction.getLatestBid().getPrice());
+        }
+    }
+
+    @Test
+    public void testFailingHandlerRejectsAndCounts() throws IOException {
+        try (BidIntakeServer server = new BidIntakeServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                (lotId, bidId, participantId, price) -> {
+                    throw new IllegalStateException("lot " + lotId + " is gone");
+                }, 1);
+             SocketChannel client = SocketChannel.open(server.getAddress())) {
+
+            ByteBuffer request = ByteBuffer.allocate(BidIntakeServer.REQUEST_SIZE);
+            request.putLong(7L).putLong(1L).putLong(1L).putLong(10L).flip();
+            client.write(request);
+            ByteBuffer response = ByteBuffer.allocate(BidIntakeServer.RESPONSE_SIZE);
+            while (response.hasRemaining()) {
+                client.read(response);
+            }
+
+            assertEquals(0L, response.getLong(8));
+            assertEquals(1L, server.getHandlerErrorCount());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package course.concurrency.exams.auction;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NotifierTests {
+
+    @Test
+    public void testCoalescingKeepsLatestBidPerParticipant() {
+        CoalescingNotifier notifier = new CoalescingNotifier(60_000, 1, 2);
+        try {
+            for (long price = 0; price < 100; price++) {
+                notifier.sendOutdatedMessage(new Bid(price, price % 3, price));
+            }
+            notifier.sendOutdatedMessage(new Bid(-1L, null, -1L));
+            notifier.flush();
+
+            assertEquals(100, notifier.getReceivedCount());
+            assertEquals(3, notifier.getSentCount());
+            assertEquals(2, notifier.getBatchCount());
+        } finally {
+            notifier.shutdown();
+        }
+    }
+
+    @Test
+    public void testCoalescingHoldsBidsWhileWorkersAreBehind() {
+        CoalescingNotifier notifier = new CoalescingNotifier(60_000, 1, 1);
+        try {
+            for (long participant = 0; participant < 5; participant++) {
+                notifier.sendOutdatedMessage(new Bid(participant, participant, 10L));
+            }
+            notifier.flush();
+            notifier.flush();
+
+            // two batches per worker, each send takes seconds
+            assertEquals(2, notifier.getBatchCount());
+            assertEquals(3, notifier.getPendingCount());
+        } finally {
+            notifier.shutdown();
+        }
+    }
+
+    @Test
+    public void testScheduledRejectsOverInFlightLimit() throws Exception {
+        ScheduledNotifier notifier = new ScheduledNotifier(50, 2);
+        try {
+            CompletableFuture<Void> first = notifier.sendAsync();
+            CompletableFuture<Void> second = notifier.sendAsync();
+            CompletableFuture<Void> third = notifier.sendAsync();
+
+            assertTrue(third.isCompletedExceptionally());
+            assertEquals(1, notifier.getRejectedCount());
+            assertEquals(2, notifier.getInFlightCount());
+
+            CompletableFuture.allOf(first, second).get(1, TimeUnit.SECONDS);
+            assertEquals(2, notifier.getCompletedCount());
+            assertEquals(0, notifier.getInFlightCount());
+        } finally {
+            notifier.shutdown();
+        }
+    }
+
+    @Test
+    public void testScheduledShutdownCancelsPendingSends() {
+        ScheduledNotifier notifier = new ScheduledNotifier(60_000, 10);
+        CompletableFuture<Void> pending = notifier.sendAsync();
+        notifier.shutdown();
+
+        assertTrue(pending.isCancelled());
+        CompletableFuture<Void> late = notifier.sendAsync();
+        CompletionException e = assertThrows(CompletionException.class, late::join);
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(1, notifier.getRejectedCount());
+    }
+}
@@ -0,0 +1,74 @@
+package course.concurrency.exams.refactoring;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoadingCacheTests {
+
+    @Test
+    @DisplayName("Concurrent loads of the same key run the loader once")
+    public void singleFlightLoad() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Others.LoadingCache<String, Object> cache = new Others.LoadingCache<>(key -> {
+            loads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return new Object();
+        });
+
+        CompletableFuture<?>[] futures = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> cache.get("router")))
+                .toArray(CompletableFuture[]::new);
+        Thread.sleep(50);
+        release.countDown();
+        CompletableFuture.allOf(futures).join();
+
+        assertEquals(1, loads.get());
+        for (CompletableFuture<?> future : futures) {
+            assertSame(futures[0].join(), future.join());
+        }
+    }
+
+    @Test
+    @DisplayName("Entries expire after access")
+    public void expireAfterAccess() throws InterruptedException {
+        Others.LoadingCache<String, Object> cache = new Others.LoadingCache<>(key -> new Object(),
+                20, 0, TimeUnit.MILLISECONDS, 100);
+
+        Object first = cache.get("router");
+        assertSame(first, cache.get("router"));
+        Thread.sleep(40);
+
+        assertNotSame(first, cache.get("router"));
+    }
+
+    @Test
+    @DisplayName("Cache size is bounded")
+    public void maximumSize() {
+        int maximumSize = 16;
+        Others.LoadingCache<Integer, Integer> cache = new Others.LoadingCache<>(key -> key,
+                0, 0, TimeUnit.MILLISECONDS, maximumSize);
+
+        for (int i = 0; i < 1_000; i++) {
+            cache.get(i);
+            cache.get(0);
+            assertTrue(cache.size() <= maximumSize);
+        }
+        assertEquals(maximumSize, cache.size());
+    }
+}
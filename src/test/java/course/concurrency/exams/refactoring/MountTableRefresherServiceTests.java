@@ -8,18 +8,31 @@ import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -187,6 +200,186 @@ public class MountTableRefresherServiceTests {
         verify(routerClientsCache, times(1)).invalidate(anyString());
     }
 
+    @Test
+    @DisplayName("Only changes after router version are pushed")
+    public void incrementalRefresh() {
+        // given
+        MountTableRefresherService mockedService = Mockito.spy(service);
+        List<String> addresses = List.of("123", "local6", "789", "local");
+        MountTableLog mountTableLog = new MountTableLog(2);
+        mountTableLog.put("/a", "ns1");
+        mountTableLog.put("/b", "ns1");
+        mountTableLog.remove("/a");
+        mockedService.setMountTableLog(mountTableLog);
+
+        when(manager.getVersion()).thenReturn(1L);
+        when(manager.applyChanges(anyList())).thenReturn(true);
+
+        List<Others.RouterState> states = addresses.stream()
+                .map(Others.RouterState::new).collect(toList());
+        when(routerStore.getCachedRecords()).thenReturn(states);
+        when(mockedService.getManager(anyString())).thenReturn(manager);
+
+        // when
+        mockedService.refresh();
+
+        // then
+        verify(manager, times(addresses.size())).applyChanges(argThat(changes -> changes.size() == 2
+                && changes.get(0).getVersion() == 2 && changes.get(1).isRemoval()));
+        verify(manager, never()).refresh();
+        verify(mockedService).log(String.format("Mount table entries cache refresh successCount=%s,failureCount=0", addresses.size()));
+    }
+
+    @Test
+    @DisplayName("Routers behind compacted history get a full refresh")
+    public void fullRefreshAfterCompaction() {
+        // given
+        MountTableRefresherService mockedService = Mockito.spy(service);
+        List<String> addresses = List.of("123", "local6", "789", "local");
+        MountTableLog mountTableLog = new MountTableLog(1);
+        mountTableLog.put("/a", "ns1");
+        mountTableLog.put("/b", "ns1");
+        mockedService.setMountTableLog(mountTableLog);
+
+        when(manager.getVersion()).thenReturn(0L);
+        when(manager.refresh()).thenReturn(true);
+
+        List<Others.RouterState> states = addresses.stream()
+                .map(Others.RouterState::new).collect(toList());
+        when(routerStore.getCachedRecords()).thenReturn(states);
+        when(mockedService.getManager(anyString())).thenReturn(manager);
+
+        // when
+        mockedService.refresh();
+
+        // then
+        verify(manager, times(addresses.size())).refresh();
+        verify(manager, never()).applyChanges(anyList());
+    }
+
+    @Test
+    @DisplayName("Refreshed version is kept for routers with new managers")
+    public void versionKeptBetweenRefreshes() {
+        // given
+        MountTableRefresherService mockedService = Mockito.spy(service);
+        MountTableLog mountTableLog = new MountTableLog(1);
+        mountTableLog.put("/a", "ns1");
+        mountTableLog.put("/b", "ns1");
+        mockedService.setMountTableLog(mountTableLog);
+
+        List<Others.RouterState> states = Stream.of("123", "local")
+                .map(Others.RouterState::new).collect(toList());
+        when(routerStore.getCachedRecords()).thenReturn(states);
+        // every manager fails once, then succeeds; like a new real one it knows no version
+        Map<String, Others.MountTableManager> managers = states.stream()
+                .collect(toMap(Others.RouterState::getAdminAddress, state -> {
+                    Others.MountTableManager manager = mock(Others.MountTableManager.class);
+                    when(manager.getVersion()).thenReturn(0L);
+                    when(manager.refresh()).thenReturn(false, true);
+                    when(manager.applyChanges(anyList())).thenReturn(false, true);
+                    return manager;
+                }));
+        doAnswer(invocation -> managers.get(invocation.<String>getArgument(0)))
+                .when(mockedService).getManager(anyString());
+
+        // when: the log doesn't retain version 0, so the first refreshes are full
+        assertEquals(2, mockedService.refreshAsync().join().getFailureCount());
+        managers.keySet().forEach(a -> assertEquals(0L, mockedService.getRouterVersion(a)));
+        assertEquals(0, mockedService.refreshAsync().join().getFailureCount());
+        managers.keySet().forEach(a -> assertEquals(2L, mockedService.getRouterVersion(a)));
+
+        // then: routers that are up to date need no calls
+        for (int i = 0; i < 20; i++) {
+            assertEquals(0, mockedService.refreshAsync().join().getFailureCount());
+        }
+
+        // and the next change is applied incrementally on top of the full refresh
+        mountTableLog.put("/c", "ns2");
+        assertEquals(2, mockedService.refreshAsync().join().getFailureCount());
+        managers.keySet().forEach(a -> assertEquals(2L, mockedService.getRouterVersion(a)));
+        assertEquals(0, mockedService.refreshAsync().join().getFailureCount());
+        managers.keySet().forEach(a -> assertEquals(3L, mockedService.getRouterVersion(a)));
+
+        managers.values().forEach(manager -> {
+            verify(manager, times(2)).refresh();
+            verify(manager, times(2)).applyChanges(anyList());
+        });
+    }
+
+    @Test
+    @DisplayName("Slow router gets a longer timeout instead of failing")
+    public void adaptiveTimeouts() {
+        // given
+        MountTableRefresherService mockedService = Mockito.spy(service);
+        mockedService.setCacheUpdateTimeout(20);
+        mockedService.setCacheUpdateTimeoutBounds(5, 500);
+        Others.MountTableManager slowManager = mock(Others.MountTableManager.class);
+
+        when(manager.refresh()).thenReturn(true);
+        when(slowManager.refresh()).thenAnswer(invocationOnMock -> {
+            Thread.sleep(50);
+            return true;
+        });
+
+        Others.RouterState fast = new Others.RouterState("fast");
+        Others.RouterState slow = new Others.RouterState("slow");
+        when(routerStore.getCachedRecords()).thenReturn(List.of(fast, slow));
+        doReturn(manager).when(mockedService).getManager(startsWith("fast"));
+        doReturn(slowManager).when(mockedService).getManager(startsWith("slow"));
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            mockedService.refresh();
+        }
+
+        // then
+        verify(mockedService, atLeastOnce()).log("Some cache updates timed out");
+        verify(mockedService, atLeastOnce()).log("Mount table entries cache refresh successCount=2,failureCount=0");
+        long slowTimeout = mockedService.getCacheUpdateTimeout(slow.getAdminAddress());
+        assertTrue(slowTimeout >= 100 && slowTimeout <= 500, "slow router timeout " + slowTimeout);
+    }
+
+    @Test
+    @DisplayName("Report has outcome of every router")
+    public void refreshReport() {
+        // given
+        MountTableRefresherService mockedService = Mockito.spy(service);
+        List<String> addresses = List.of("123", "local6", "789", "local");
+
+        AtomicLong managerCounter = new AtomicLong();
+        when(manager.refresh()).thenAnswer(invocationOnMock -> managerCounter.getAndIncrement() == 0);
+
+        List<Others.RouterState> states = addresses.stream()
+                .map(Others.RouterState::new).collect(toList());
+        when(routerStore.getCachedRecords()).thenReturn(states);
+        when(mockedService.getManager(anyString())).thenReturn(manager);
+
+        doAnswer(invocationOnMock -> new CompletableFuture<Void>().orTimeout(1, TimeUnit.MILLISECONDS))
+                .doAnswer(invocationOnMock -> CompletableFuture.failedFuture(new IllegalStateException()))
+                .doAnswer(InvocationOnMock::callRealMethod)
+                .when(mockedService).refresherToFuture(notNull());
+
+        // when
+        RefreshReport report = mockedService.refreshAsync().join();
+
+        // then
+        List<RefreshReport.RouterResult> results = report.getResults();
+        assertEquals(addresses.size(), results.size());
+        assertEquals(states.get(0).getAdminAddress(), results.get(0).getAdminAddress());
+        assertEquals(RefreshReport.Outcome.TIMEOUT, results.get(0).getOutcome());
+        assertTrue(results.get(0).getCause() instanceof TimeoutException);
+        assertTrue(results.get(0).getLatency(TimeUnit.NANOSECONDS) > 0);
+        assertEquals(RefreshReport.Outcome.ERROR, results.get(1).getOutcome());
+        assertTrue(results.get(1).getCause() instanceof IllegalStateException);
+        assertEquals(RefreshReport.Outcome.SUCCESS, results.get(2).getOutcome());
+        assertEquals(RefreshReport.Outcome.FAILURE, results.get(3).getOutcome());
+        assertEquals(1, report.getSuccessCount());
+        assertEquals(3, report.getFailureCount());
+        verify(mockedService).log("Some cache updates timed out");
+        verify(mockedService).log("Mount table entries cache refresh successCount=1,failureCount=3");
+        verify(routerClientsCache, times(3)).invalidate(anyString());
+    }
+
     @Test
     @DisplayName("Several refresh() invocations from different threads")
     public void severalInvocations() {
@@ -218,8 +411,48 @@ public class MountTableRefresherServiceTests {
         ).join();
 
         // then
-        verify(mockedService, times(1)).invokeRefresh(anyList());
-        verify(mockedService, times(1)).log(String.format("Mount table entries cache refresh successCount=%s,failureCount=0", addresses.size()));
+        // callers that came while the first round was running are coalesced into one more round
+        int rounds = (int) mockedService.getCompletedRefreshGeneration();
+        assertTrue(rounds >= 1 && rounds <= 2, "refresh rounds " + rounds);
+        verify(mockedService, times(rounds)).invokeRefresh(anyList());
+        verify(mockedService, times(rounds)).log(String.format("Mount table entries cache refresh successCount=%s,failureCount=0", addresses.size()));
         verify(routerClientsCache, never()).invalidate(anyString());
     }
+
+    @Test
+    @DisplayName("Callers during a running refresh share the next round")
+    public void coalescedInvocations() throws InterruptedException {
+        // given
+        MountTableRefresherService mockedService = Mockito.spy(service);
+        List<String> addresses = List.of("123", "local6", "789", "local");
+        CountDownLatch firstRoundStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstRound = new CountDownLatch(1);
+
+        when(manager.refresh()).thenAnswer(invocationOnMock -> {
+            firstRoundStarted.countDown();
+            releaseFirstRound.await();
+            return true;
+        });
+
+        List<Others.RouterState> states = addresses.stream()
+                .map(Others.RouterState::new).collect(toList());
+        when(routerStore.getCachedRecords()).thenReturn(states);
+        when(mockedService.getManager(anyString())).thenReturn(manager);
+
+        // when
+        CompletableFuture<RefreshReport> first = mockedService.refreshAsync();
+        firstRoundStarted.await();
+        List<CompletableFuture<RefreshReport>> next = IntStream.range(0, 5)
+                .mapToObj(i -> mockedService.refreshAsync())
+                .collect(toList());
+        releaseFirstRound.countDown();
+        first.join();
+        next.forEach(CompletableFuture::join);
+
+        // then
+        assertNotSame(first, next.get(0));
+        next.forEach(future -> assertSame(next.get(0), future));
+        assertEquals(2, mockedService.getCompletedRefreshGeneration());
+        verify(mockedService, times(2)).invokeRefresh(anyList());
+    }
 }
@@ -0,0 +1,45 @@
+package course.concurrency.exams.refactoring;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RefreshLatencyTrackerTests {
+
+    @Test
+    @DisplayName("Percentile is tracked per router")
+    public void percentilePerRouter() {
+        RefreshLatencyTracker tracker = new RefreshLatencyTracker(0.9);
+
+        for (int i = 0; i < 100; i++) {
+            tracker.record("fast", 1 + i % 2, TimeUnit.MILLISECONDS);
+            tracker.record("slow", 100 + i % 20, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(-1, tracker.getPercentileMillis("unknown"));
+        double fast = tracker.getPercentileMillis("fast");
+        double slow = tracker.getPercentileMillis("slow");
+        assertTrue(fast >= 2 && fast < 3, "fast " + fast);
+        assertTrue(slow >= 119 && slow < 170, "slow " + slow);
+    }
+
+    @Test
+    @DisplayName("Old samples decay")
+    public void oldSamplesDecay() {
+        RefreshLatencyTracker tracker = new RefreshLatencyTracker(0.99);
+
+        for (int i = 0; i < 100; i++) {
+            tracker.record("router", 500, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(tracker.getPercentileMillis("router") >= 500);
+
+        for (int i = 0; i < 200; i++) {
+            tracker.record("router", 1, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(tracker.getPercentileMillis("router") < 2);
+    }
+}